@@ -23,6 +23,7 @@
  */
 package net.pl3x.map.bukkit;
 
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
 import java.util.UUID;
 import net.pl3x.map.bukkit.command.BukkitCommandManager;
 import net.pl3x.map.core.Pl3xMap;
@@ -70,6 +71,7 @@ public class Pl3xMapBukkit extends JavaPlugin implements Listener {
         this.pl3xmap.enable();
 
         getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(new BukkitChunkListener(), this);
 
         this.network = new BukkitNetwork(this);
         this.network.register();
@@ -124,6 +126,11 @@ public class Pl3xMapBukkit extends JavaPlugin implements Listener {
         Pl3xMap.api().getWorldRegistry().unregister(event.getWorld().getName());
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onServerTickEnd(ServerTickEndEvent event) {
+        Pl3xMap.api().getRegionProcessor().getGovernor().recordTick((long) (event.getTickDuration() * 1_000_000.0D));
+    }
+
     @EventHandler(priority = EventPriority.LOWEST)
     public void onServerLoaded(ServerLoadEvent event) {
         Pl3xMap.api().getEventRegistry().callEvent(new ServerLoadedEvent());
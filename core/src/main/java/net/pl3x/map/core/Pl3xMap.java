@@ -31,6 +31,11 @@ import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
@@ -90,7 +95,10 @@ public abstract class Pl3xMap {
     private final RendererRegistry rendererRegistry;
     private final WorldRegistry worldRegistry;
 
+    private ExecutorService readerExecutor;
     private ExecutorService renderExecutor;
+    private ExecutorService writerExecutor;
+    private ScheduledExecutorService tileWriterExecutor;
 
     private String commit;
     private Metrics metrics;
@@ -181,10 +189,22 @@ public abstract class Pl3xMap {
         return this.worldRegistry;
     }
 
+    public @NotNull ExecutorService getReaderExecutor() {
+        return this.readerExecutor;
+    }
+
     public @NotNull ExecutorService getRenderExecutor() {
         return this.renderExecutor;
     }
 
+    public @NotNull ExecutorService getWriterExecutor() {
+        return this.writerExecutor;
+    }
+
+    public @Nullable ScheduledExecutorService getTileWriterExecutor() {
+        return this.tileWriterExecutor;
+    }
+
     public @NotNull Scheduler getScheduler() {
         return this.scheduler;
     }
@@ -212,7 +232,20 @@ public abstract class Pl3xMap {
 
         // create the executor service
         Logger.debug("Creating services");
-        this.renderExecutor = ThreadFactory.createService("Pl3xMap-Renderer", Config.RENDER_THREADS);
+        // the pipeline stages block on each other, so they get plain pools sharing the render-threads budget
+        int budget = ThreadFactory.threads(Config.RENDER_THREADS, Runtime.getRuntime().availableProcessors() / 2);
+        int readers = Mathf.clamp(1, budget, Config.PIPELINE_READ_THREADS);
+        int writers = Mathf.clamp(1, budget, Config.PIPELINE_WRITE_THREADS);
+        int renderers = Math.max(1, budget - readers - writers);
+        if (Config.GOVERNOR_ENABLED && Config.GOVERNOR_MAX_THREADS > 0) {
+            // only go past render-threads when asked to, the governor still decides how many work at a time
+            renderers = ThreadFactory.threads(Config.GOVERNOR_MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1);
+        }
+        this.readerExecutor = ThreadFactory.createFixedService("Pl3xMap-Reader", readers);
+        this.renderExecutor = ThreadFactory.createFixedService("Pl3xMap-Renderer", renderers);
+        this.writerExecutor = ThreadFactory.createFixedService("Pl3xMap-Writer", writers);
+        getRegionProcessor().getGovernor().reset(renderers);
+        this.tileWriterExecutor = ThreadFactory.createScheduledService("Pl3xMap-TileWriter", Config.TILE_WRITER_THREADS);
 
         // register built in tile image types
         Logger.debug("Registering tile image types");
@@ -275,9 +308,28 @@ public abstract class Pl3xMap {
         getScheduler().cancelAll();
         getRegionDoubleChecker().stop();
         getRegionProcessor().stop();
+        if (this.readerExecutor != null) {
+            this.readerExecutor.shutdownNow();
+        }
         if (this.renderExecutor != null) {
             this.renderExecutor.shutdownNow();
         }
+        if (this.writerExecutor != null) {
+            this.writerExecutor.shutdownNow();
+        }
+        if (this.tileWriterExecutor != null) {
+            // let queued tile writes finish, anything left is written out when the worlds are unregistered
+            this.tileWriterExecutor.shutdown();
+            try {
+                if (!this.tileWriterExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    Logger.warn("Timed out waiting for tile writes to finish");
+                    this.tileWriterExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.tileWriterExecutor = null;
+        }
 
         // stop integrated server
         Logger.debug("Stopping internal server");
@@ -384,15 +436,55 @@ public abstract class Pl3xMap {
         }
 
         public static @NotNull ExecutorService createService(@NotNull String name, int threads) {
-            int max = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
-            int parallelism = Mathf.clamp(1, max, threads < 1 ? max : threads);
-            return createService(new ThreadFactory(name, parallelism));
+            return createService(name, threads, Runtime.getRuntime().availableProcessors() / 2);
+        }
+
+        public static @NotNull ExecutorService createService(@NotNull String name, int threads, int max) {
+            return createService(new ThreadFactory(name, threads(threads, max)));
         }
 
         private static @NotNull ExecutorService createService(@NotNull ThreadFactory factory) {
             return new ForkJoinPool(factory.threads, factory, null, false);
         }
 
+        /**
+         * Create a fixed size pool for work that blocks, where a fork join pool would not be able
+         * to tell the threads are waiting instead of working.
+         *
+         * @param name    Thread name
+         * @param threads Number of threads
+         * @return New executor
+         */
+        public static @NotNull ExecutorService createFixedService(@NotNull String name, int threads) {
+            ThreadFactory factory = new ThreadFactory(name, Math.max(1, threads));
+            return new ThreadPoolExecutor(factory.threads, factory.threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory::newPlainThread);
+        }
+
+        public static @NotNull ScheduledExecutorService createScheduledService(@NotNull String name, int threads) {
+            ThreadFactory factory = new ThreadFactory(name, Math.max(1, threads));
+            return new ScheduledThreadPoolExecutor(factory.threads, factory::newPlainThread);
+        }
+
+        /**
+         * Resolve a configured number of threads.
+         *
+         * @param threads Configured number of threads, less than 1 for the maximum
+         * @param max     Most threads allowed
+         * @return Number of threads to use
+         */
+        public static int threads(int threads, int max) {
+            max = Math.max(1, max);
+            return Mathf.clamp(1, max, threads < 1 ? max : threads);
+        }
+
+        private @NotNull Thread newPlainThread(@NotNull Runnable task) {
+            Thread thread = new Thread(task);
+            thread.setContextClassLoader(Pl3xMap.class.getClassLoader());
+            thread.setName(this.threads > 1 ? String.format("%s-%d", this.name, this.id.getAndIncrement()) : this.name);
+            thread.setDaemon(true);
+            return thread;
+        }
+
         @Override
         public @NotNull ForkJoinWorkerThread newThread(@NotNull ForkJoinPool pool) {
             ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
@@ -84,6 +84,9 @@ public class RadiusRenderCommand extends Pl3xMapCommand {
             regions.forEach(region -> Logger.debug("Adding region: " + region));
         }
 
+        // redraw every chunk, not just the ones that changed
+        regions.forEach(region -> world.getRegionModifiedState().resetChunks(region.x(), region.z()));
+
         Pl3xMap.api().getRegionProcessor().addRegions(world, regions);
 
         sender.sendMessage(Lang.COMMAND_RADIUSRENDER_STARTING);
@@ -31,9 +31,11 @@ import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.command.CommandHandler;
 import net.pl3x.map.core.command.Pl3xMapCommand;
 import net.pl3x.map.core.command.Sender;
+import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.renderer.progress.Progress;
 import net.pl3x.map.core.renderer.task.RegionProcessor;
+import net.pl3x.map.core.renderer.task.RenderGovernor;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 
@@ -70,6 +72,12 @@ public class StatusCommand extends Pl3xMapCommand {
         String queuedHeader = "<gray>Queued up renderers:</gray>";
         String queuedEntry = "<dark_gray><line></dark_gray> <color:#5b00ff>World:</color> <white><world></white>";
 
+        String governor = """
+                <gray>Render governor:</gray> <white><decision></white>
+                <dark_gray><linenext></dark_gray> <white>mspt:</white> <gray><mspt> (target <target>)</gray>
+                <dark_gray><linenext></dark_gray> <white>workers:</white> <gray><workers>/<max_workers></gray>
+                <dark_gray><linelast></dark_gray> <white>duty:</white> <gray><duty>%</gray>""";
+
         String paused = "<gray>Renderers are </gray><white>paused</white>";
         String idle = "<gray>Renderers are </gray><white>idle</white>";
 
@@ -102,6 +110,20 @@ public class StatusCommand extends Pl3xMapCommand {
                 sb.append("\n");
             }
         }
+        RenderGovernor renderGovernor = processor.getGovernor();
+        if (renderGovernor.isActive()) {
+            sb.append(governor
+                    .replace("<decision>", renderGovernor.getDecision())
+                    .replace("<mspt>", String.format("%.2f", renderGovernor.getMspt()))
+                    .replace("<target>", String.format("%.2f", Config.GOVERNOR_TARGET_MSPT))
+                    .replace("<workers>", Integer.toString(renderGovernor.getWorkers()))
+                    .replace("<max_workers>", Integer.toString(renderGovernor.getMaxWorkers()))
+                    .replace("<duty>", String.format("%.0f", renderGovernor.getDuty() * 100.0D))
+                    .replace("<linenext>", lineNext)
+                    .replace("<linelast>", lineLast));
+            sb.append("\n");
+        }
+
         sb.append(footer);
 
         if (isPaused || isIdle) {
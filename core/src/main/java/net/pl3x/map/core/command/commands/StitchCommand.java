@@ -33,7 +33,6 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Stream;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.pl3x.map.core.command.CommandHandler;
 import net.pl3x.map.core.command.Pl3xMapCommand;
@@ -44,6 +43,7 @@ import net.pl3x.map.core.command.argument.ZoomArgument;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.image.io.IO;
+import net.pl3x.map.core.image.store.TileStore;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.renderer.Renderer;
@@ -83,7 +83,7 @@ public class StitchCommand extends Pl3xMapCommand {
             return;
         }
 
-        Map<Point, Path> pngFiles = getTiles(dir, sender);
+        Map<Point, String> pngFiles = getTiles(world.getTileStore(), zoom, renderer.getKey(), sender);
         if (pngFiles == null) return;
 
         int minX = Integer.MAX_VALUE;
@@ -122,23 +122,26 @@ public class StitchCommand extends Pl3xMapCommand {
     }
 
     @Nullable
-    private static Map<Point, Path> getTiles(Path dir, Sender sender) {
-        Map<Point, Path> pngFiles = new HashMap<>();
-        try (Stream<Path> stream = Files.list(dir)) {
-            stream.filter(World.PNG_MATCHER::matches).forEach(path -> {
-                String[] split = path.getFileName().toString().split(".png")[0].split("_");
+    private static Map<Point, String> getTiles(TileStore store, int zoom, String renderer, Sender sender) {
+        Map<Point, String> pngFiles = new HashMap<>();
+        try {
+            for (String tile : store.list(zoom, renderer)) {
+                if (!tile.endsWith(".png")) {
+                    continue;
+                }
+                String[] split = tile.substring(tile.lastIndexOf('/') + 1).split(".png")[0].split("_");
                 if (split.length != 2) {
-                    return;
+                    continue;
                 }
                 int x, z;
                 try {
                     x = Integer.parseInt(split[0]);
                     z = Integer.parseInt(split[1]);
                 } catch (NumberFormatException e) {
-                    return;
+                    continue;
                 }
-                pngFiles.put(Point.of(x, z), path);
-            });
+                pngFiles.put(Point.of(x, z), tile);
+            }
         } catch (IOException e) {
             sender.sendMessage(Lang.COMMAND_STITCH_ERROR_READING_DIRECTORY);
             e.printStackTrace();
@@ -153,23 +156,24 @@ public class StitchCommand extends Pl3xMapCommand {
     }
 
     @NotNull
-    private static String stitchImage(int sizeX, int sizeZ, Map<Point, Path> pngFiles, int minX, int minZ, World world, Renderer.Builder renderer, int zoom) {
+    private static String stitchImage(int sizeX, int sizeZ, Map<Point, String> pngFiles, int minX, int minZ, World world, Renderer.Builder renderer, int zoom) {
         Path dir;
         IO.Type io = IO.get(Config.WEB_TILE_FORMAT);
 
         BufferedImage stitched = new BufferedImage((sizeX + 1) << 9, (sizeZ + 1) << 9, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = stitched.createGraphics();
 
-        for (Map.Entry<Point, Path> entry : pngFiles.entrySet()) {
+        for (Map.Entry<Point, String> entry : pngFiles.entrySet()) {
             try {
-                BufferedImage tile = io.read(entry.getValue());
+                byte[] data = world.getTileStore().read(entry.getValue());
+                BufferedImage tile = data == null ? null : io.read(data);
                 if (tile == null) {
                     continue;
                 }
                 Point point = entry.getKey();
                 g2d.drawImage(tile, (point.x() - minX) << 9, (point.z() - minZ) << 9, null);
             } catch (Throwable t) {
-                Logger.severe("Could not generate tile from point %s in path %s".formatted(entry.getKey(), entry.getValue().toAbsolutePath()), t);
+                Logger.severe("Could not generate tile from point %s in tile %s".formatted(entry.getKey(), entry.getValue()), t);
             }
         }
 
@@ -63,7 +63,8 @@ public final class Config extends AbstractConfig {
     @Key("settings.web-directory.tile-format")
     @Comment("""
             The image format for tile images.
-            Built in types: bmp, gif, jpg, jpeg, png""")
+            Built in types: bmp, gif, jpg, jpeg, png, png8
+            png8 writes smaller 256 color png tiles.""")
     public static String WEB_TILE_FORMAT = "png";
     @Key("settings.web-directory.tile-quality")
     @Comment("""
@@ -72,6 +73,41 @@ public final class Config extends AbstractConfig {
             1.0 is high quality, no compression, large file size
             Note: Not all image formats honor this setting.""")
     public static double WEB_TILE_QUALITY = 0.0D;
+    @Key("settings.web-directory.png.filter")
+    @Comment("""
+            The row filter used when writing png tiles.
+            Options: none, sub, up, average, paeth, adaptive
+            Adaptive picks the best filter for every row, at some extra cost.""")
+    public static String WEB_TILE_PNG_FILTER = "paeth";
+    @Key("settings.web-directory.png.compression")
+    @Comment("""
+            The deflate level used when writing png tiles (0 - 9)
+            Higher levels make smaller files but take longer to write.""")
+    public static int WEB_TILE_PNG_COMPRESSION = 4;
+    @Key("settings.web-directory.png.strips")
+    @Comment("""
+            How many strips each png tile is split into to be compressed in parallel.
+            1 compresses each tile on a single thread.""")
+    public static int WEB_TILE_PNG_STRIPS = 1;
+    @Key("settings.web-directory.png.dither")
+    @Comment("""
+            Use ordered dithering when a png8 tile has more than 256 colors.
+            Smooths out banding at the cost of slightly larger files.""")
+    public static boolean WEB_TILE_PNG_DITHER = false;
+    @Key("settings.web-directory.tile-store")
+    @Comment("""
+            How tiles are stored in the tiles directory.
+            Options: files, packed
+            files writes every tile as its own file.
+            packed keeps each 32x32 area of tiles in a single file,
+            which is much easier on file systems with millions of tiles.
+            Packed tiles are served by the internal web server only.""")
+    public static String WEB_TILE_STORE = "files";
+    @Key("settings.web-directory.pack-compact-ratio")
+    @Comment("""
+            How much of a tile pack can be taken up by replaced tiles
+            before the pack is rewritten without them (0.0 - 1.0)""")
+    public static double WEB_TILE_PACK_COMPACT_RATIO = 0.5D;
 
     @Key("settings.map.zoom.snap")
     @Comment("""
@@ -121,9 +157,153 @@ public final class Config extends AbstractConfig {
     @Key("settings.performance.render-threads")
     @Comment("""
             The number of process-threads to use for loading and scanning chunks.
+            The pipeline's read and write threads are taken out of this.
             Value of -1 will use 50% of the available cpu-threads. (recommended)""")
     public static int RENDER_THREADS = -1;
 
+    @Key("settings.performance.pipeline.read-threads")
+    @Comment("""
+            The number of threads reading and decoding region files
+            ahead of the render threads. Counts against render-threads,
+            but at least one render thread is always left.""")
+    public static int PIPELINE_READ_THREADS = 1;
+    @Key("settings.performance.pipeline.write-threads")
+    @Comment("""
+            The number of threads encoding and writing tile images
+            behind the render threads. Counts against render-threads,
+            but at least one render thread is always left.""")
+    public static int PIPELINE_WRITE_THREADS = 1;
+    @Key("settings.performance.pipeline.read-ahead")
+    @Comment("""
+            How many loaded regions may wait for a free render thread.
+            Higher values keep the render threads busier at the cost of memory.""")
+    public static int PIPELINE_READ_AHEAD = 4;
+    @Key("settings.performance.pipeline.write-behind")
+    @Comment("""
+            How many rendered regions may wait for a free write thread
+            before the render threads stop to let them catch up.""")
+    public static int PIPELINE_WRITE_BEHIND = 8;
+    @Key("settings.performance.partial-render.max-chunks")
+    @Comment("""
+            Regions with at most this many changed chunks only redraw those
+            chunks into their existing tiles instead of the whole region.
+            Set to 0 to always redraw whole regions.""")
+    public static int PARTIAL_RENDER_MAX_CHUNKS = 256;
+    @Key("settings.performance.pyramid.flush-interval")
+    @Comment("""
+            How many seconds a zoomed out tile may wait for the rest
+            of its regions to finish rendering before it is written anyway.""")
+    public static int PYRAMID_FLUSH_INTERVAL = 30;
+    @Key("settings.performance.pyramid.cache-size")
+    @Comment("""
+            How many zoomed out tiles to keep decoded in memory, both while
+            waiting to be written and between writes. Each tile takes about 1MB.""")
+    public static int PYRAMID_CACHE_SIZE = 64;
+    @Key("settings.performance.tile-writer.threads")
+    @Comment("""
+            The number of threads writing finished tiles to disk.""")
+    public static int TILE_WRITER_THREADS = 2;
+    @Key("settings.performance.tile-writer.delay")
+    @Comment("""
+            How many milliseconds a finished tile waits before it is written.
+            Tiles that change again in the meantime are only written once.""")
+    public static int TILE_WRITER_DELAY = 1000;
+    @Key("settings.performance.tile-writer.memory")
+    @Comment("""
+            How many megabytes of finished tiles may wait to be written
+            before the writes are made to catch up.""")
+    public static int TILE_WRITER_MEMORY = 64;
+    @Key("settings.performance.priority.half-life")
+    @Comment("""
+            How many seconds it takes for the interest in a region to halve.
+            Regions near players, with recent changes or looked at on the map
+            are rendered before the rest.""")
+    public static int PRIORITY_HALF_LIFE = 300;
+    @Key("settings.performance.priority.player-radius")
+    @Comment("""
+            How many regions around each player are rendered first.""")
+    public static int PRIORITY_PLAYER_RADIUS = 1;
+    @Key("settings.performance.priority.hot-streak")
+    @Comment("""
+            How many wanted regions may jump the queue in a row
+            before the next region of the full render gets its turn.""")
+    public static int PRIORITY_HOT_STREAK = 4;
+    @Key("settings.performance.live-updates.enabled")
+    @Comment("""
+            Listen for block changes on the server and re-render the changed
+            chunks as soon as the server saved them, instead of waiting for
+            the next region file check.""")
+    public static boolean LIVE_UPDATES_ENABLED = true;
+    @Key("settings.performance.live-updates.interval")
+    @Comment("""
+            How many seconds between checks for saved changed chunks.""")
+    public static int LIVE_UPDATES_INTERVAL = 5;
+    @Key("settings.performance.live-updates.expire")
+    @Comment("""
+            How many seconds a changed chunk may wait for the server to save it
+            before it is left to the region file check.""")
+    public static int LIVE_UPDATES_EXPIRE = 900;
+    @Key("settings.performance.file-watcher.enabled")
+    @Comment("""
+            Watch the region directories for region files being saved,
+            instead of checking every region file every 30 seconds.""")
+    public static boolean FILE_WATCHER_ENABLED = true;
+    @Key("settings.performance.file-watcher.debounce")
+    @Comment("""
+            How many milliseconds a region file has to be left alone
+            after a write before it is queued for rendering.""")
+    public static int FILE_WATCHER_DEBOUNCE = 2000;
+    @Key("settings.performance.file-watcher.sweep-interval")
+    @Comment("""
+            How many seconds between checks of every region file, in case the
+            file watcher missed anything. Only used when the file watcher is enabled.""")
+    public static int FILE_WATCHER_SWEEP_INTERVAL = 1800;
+    @Key("settings.performance.governor.enabled")
+    @Comment("""
+            Scale the render threads up and down with the server's tick time,
+            so rendering uses spare cpu without making the server lag.""")
+    public static boolean GOVERNOR_ENABLED = true;
+    @Key("settings.performance.governor.target-mspt")
+    @Comment("""
+            The tick time in milliseconds to keep the server under.
+            Render threads are slowed down while ticks take longer than this.""")
+    public static double GOVERNOR_TARGET_MSPT = 40.0D;
+    @Key("settings.performance.governor.hysteresis")
+    @Comment("""
+            How far below the target tick time the server has to be, as a fraction
+            of the target, before render threads are sped up again.""")
+    public static double GOVERNOR_HYSTERESIS = 0.25D;
+    @Key("settings.performance.governor.calm-seconds")
+    @Comment("""
+            How many seconds the server has to stay below the target
+            before each step up in rendering speed.""")
+    public static int GOVERNOR_CALM_SECONDS = 10;
+    @Key("settings.performance.governor.min-threads")
+    @Comment("""
+            The fewest render threads to keep working while the server is busy.""")
+    public static int GOVERNOR_MIN_THREADS = 1;
+    @Key("settings.performance.governor.max-threads")
+    @Comment("""
+            The most render threads to use while the server is idle.
+            Value of -1 will use the render threads left over from render-threads.
+            Any other value replaces that, up to all but one of the available cpu-threads.""")
+    public static int GOVERNOR_MAX_THREADS = -1;
+    @Key("settings.performance.governor.min-duty")
+    @Comment("""
+            The smallest fraction of the time a render thread keeps working
+            while the server is busy, between 0.01 and 1.0.""")
+    public static double GOVERNOR_MIN_DUTY = 0.1D;
+    @Key("settings.performance.render-journal.enabled")
+    @Comment("""
+            Keep a log of each world's render queue on disk, so renders
+            interrupted by a restart or crash continue where they left off.""")
+    public static boolean RENDER_JOURNAL_ENABLED = true;
+    @Key("settings.performance.render-journal.compact-after")
+    @Comment("""
+            How many finished regions may pile up in the log before it is
+            rewritten with only the unfinished ones.""")
+    public static int RENDER_JOURNAL_COMPACT_AFTER = 8192;
+
     @Key("settings.performance.gc.when-finished")
     @Comment("""
             Runs the JVM GC after a render job stops to free up memory immediately.""")
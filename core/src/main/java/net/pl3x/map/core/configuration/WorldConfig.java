@@ -164,6 +164,12 @@ public final class WorldConfig extends AbstractConfig {
             Visible areas of the world.""")
     public List<Area> VISIBLE_AREAS = new ArrayList<>(); // defaults added in ctor
 
+    @Key("render.clip-to-world-border")
+    @Comment("""
+            Never render outside the world border,
+            whatever the visible areas above allow.""")
+    public boolean RENDER_CLIP_TO_BORDER = false;
+
     private final World world;
 
     public WorldConfig(@NotNull World world) {
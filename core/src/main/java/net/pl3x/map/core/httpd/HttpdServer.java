@@ -26,22 +26,33 @@ package net.pl3x.map.core.httpd;
 import io.undertow.Undertow;
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowOptions;
+import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.resource.PathResourceManager;
 import io.undertow.server.handlers.resource.ResourceHandler;
 import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.util.ETag;
 import io.undertow.util.Headers;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.log.LogFilter;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
 
 public class HttpdServer {
+    // /tiles/<world>/<zoom>/<renderer>/<x>_<z>.<ext>
+    private static final Pattern TILE_URL = Pattern.compile("^/tiles/([^/]+)/((\\d+)/[^/.]+/(-?\\d+)_(-?\\d+)\\.([a-z0-9]+))$");
+
     private Undertow server;
 
     public void startServer() {
@@ -55,6 +66,20 @@ public class HttpdServer {
                     .setBase(Paths.get(FileUtil.getWebDir().toFile().getAbsolutePath()))
                     .setFollowLinks(Config.HTTPD_FOLLOW_SYMLINKS)
                     .setETagFunction((path) -> {
+                        // tiles we rendered ourselves only change tag when their pixels change
+                        Path tiles = FileUtil.getTilesDir().toAbsolutePath().normalize();
+                        Path file = path.toAbsolutePath().normalize();
+                        if (file.startsWith(tiles) && file.getNameCount() > tiles.getNameCount() + 1) {
+                            Path relative = tiles.relativize(file);
+                            World world = Pl3xMap.api().getWorldRegistry().getByTilesDirectory(relative.getName(0).toString());
+                            if (world != null) {
+                                String tile = relative.subpath(1, relative.getNameCount()).toString().replace('\\', '/');
+                                long hash = world.getTileHashIndex().getWritten(tile);
+                                if (hash != 0) {
+                                    return new ETag(false, Long.toHexString(hash));
+                                }
+                            }
+                        }
                         try {
                             BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
                             long time = attr.lastModifiedTime().toMillis();
@@ -89,7 +114,10 @@ public class HttpdServer {
                             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
                             exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, "gzip");
                         }
-                        resourceHandler.handleRequest(exchange);
+                        demandTile(exchange);
+                        if (!handleStoredTile(exchange)) {
+                            resourceHandler.handleRequest(exchange);
+                        }
                     })
                     .build();
             this.server.start();
@@ -105,6 +133,80 @@ public class HttpdServer {
         }
     }
 
+    private void demandTile(@NotNull HttpServerExchange exchange) {
+        // tiles/<world>/<zoom>/<renderer>/<x>_<z>.<ext>
+        Matcher matcher = TILE_URL.matcher(exchange.getRelativePath());
+        if (!matcher.matches() || matcher.group(6).equals("gz")) {
+            return;
+        }
+        World world = Pl3xMap.api().getWorldRegistry().getByTilesDirectory(matcher.group(1));
+        if (world == null) {
+            return;
+        }
+        int zoom;
+        int tileX;
+        int tileZ;
+        try {
+            zoom = Integer.parseInt(matcher.group(3));
+            tileX = Integer.parseInt(matcher.group(4));
+            tileZ = Integer.parseInt(matcher.group(5));
+        } catch (NumberFormatException ignore) {
+            return;
+        }
+        // viewers looking at a tile want it fresh, finding its regions touches the disk so keep it off the io threads
+        exchange.getConnection().getWorker().execute(() -> world.getRegionDemand().touchTile(zoom, tileX, tileZ));
+    }
+
+    private boolean handleStoredTile(@NotNull HttpServerExchange exchange) {
+        // settings, markers, biomes and everything else in the tiles directory are plain files
+        Matcher matcher = TILE_URL.matcher(exchange.getRelativePath());
+        if (!matcher.matches()) {
+            return false;
+        }
+        World world = Pl3xMap.api().getWorldRegistry().getByTilesDirectory(matcher.group(1));
+        if (world == null) {
+            return false;
+        }
+        String tile = matcher.group(2);
+        if (world.getTileStore().getFile(tile) != null) {
+            // plain files are served as they are
+            return false;
+        }
+        // reading a packed tile touches the disk, keep it off the io threads
+        exchange.dispatch(() -> sendStoredTile(exchange, world, tile));
+        return true;
+    }
+
+    private void sendStoredTile(@NotNull HttpServerExchange exchange, @NotNull World world, @NotNull String tile) {
+        try {
+            byte[] data = world.getTileStore().read(tile);
+            if (data == null) {
+                exchange.setStatusCode(tile.endsWith(".png") || tile.endsWith(".gz") ? 200 : 404);
+                exchange.endExchange();
+                return;
+            }
+            long hash = world.getTileHashIndex().getWritten(tile);
+            if (hash != 0) {
+                String etag = new ETag(false, Long.toHexString(hash)).toString();
+                String match = exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH);
+                if (match != null && match.contains(etag)) {
+                    exchange.setStatusCode(304);
+                    exchange.endExchange();
+                    return;
+                }
+                exchange.getResponseHeaders().put(Headers.ETAG, etag);
+            }
+            if (!tile.endsWith(".gz")) {
+                String extension = tile.substring(tile.lastIndexOf('.') + 1).replace("jpg", "jpeg");
+                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "image/" + extension);
+            }
+            exchange.getResponseSender().send(ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            exchange.setStatusCode(500);
+            exchange.endExchange();
+        }
+    }
+
     public void stopServer() {
         if (!Config.HTTPD_ENABLED) {
             return;
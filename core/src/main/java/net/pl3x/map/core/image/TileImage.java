@@ -24,9 +24,8 @@
 package net.pl3x.map.core.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,16 +34,16 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import net.pl3x.map.core.Keyed;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.image.io.IO;
-import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.image.store.TileStore;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.util.Colors;
-import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.world.TileHashIndex;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class TileImage extends Keyed {
-    private static final Map<@NotNull Path, @NotNull ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>();
+    private static final Map<@NotNull String, @NotNull ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>(); // <tile name, lock>
 
     public static final String DIR_PATH = "%d/%s/";
     public static final String FILE_PATH = "%d_%d.%s";
@@ -57,6 +56,7 @@ public class TileImage extends Keyed {
     private final IO.Type io;
 
     private boolean written = false;
+    private boolean partial = false;
 
     public TileImage(@NotNull String key, @NotNull World world, @NotNull Point region) {
         super(key);
@@ -79,48 +79,106 @@ public class TileImage extends Keyed {
         this.written = true;
     }
 
+    public @NotNull Point getRegion() {
+        return this.region;
+    }
+
+    public IO.@NotNull Type getIO() {
+        return this.io;
+    }
+
+    /**
+     * Set whether only some of this tile's pixels get drawn, the rest are kept from the existing tile.
+     *
+     * @param partial True if only part of the tile is drawn
+     */
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
     public void saveToDisk() {
         if (!this.written) {
             return; // nothing written, nothing to save
         }
-        for (int zoom = 0; zoom <= this.world.getConfig().ZOOM_MAX_OUT; zoom++) {
-            Path dirPath = this.world.getTilesDirectory().resolve(String.format(DIR_PATH, zoom, getKey()));
 
-            // create directories if they don't exist
-            FileUtil.createDirs(dirPath);
+        TileStore store = this.world.getTileStore();
+        String tile = TileStore.name(0, getKey(), this.region.x(), this.region.z(), this.io.getKey());
 
-            Path filePath = dirPath.resolve(String.format(FILE_PATH,
-                    this.region.x() >> zoom,
-                    this.region.z() >> zoom,
-                    this.io.getKey()));
+        TileHashIndex hashes = this.world.getTileHashIndex();
+        long rendered = TileHashIndex.hash(this.pixels);
+        if (rendered == hashes.getRendered(tile) && store.exists(tile)) {
+            // same pixels as last time, this tile and the zoomed out ones are already up to date
+            return;
+        }
+
+        boolean changed = false;
+        Throwable error = null;
+
+        ReadWriteLock lock = FILE_LOCKS.computeIfAbsent(tile, k -> new ReentrantReadWriteLock(true));
+        lock.writeLock().lock();
 
-            ReadWriteLock lock = FILE_LOCKS.computeIfAbsent(filePath, k -> new ReentrantReadWriteLock(true));
-            lock.writeLock().lock();
+        // wrap all this to ensure we close the file lock even on fail
+        try {
+            // read existing image from the store
+            BufferedImage buffer = getBuffer(store, tile);
 
-            // wrap all this to ensure we close the file lock even on fail
-            try {
-                // read existing image from disk
-                BufferedImage buffer = getBuffer(filePath);
+            // write new pixels
+            writePixels(buffer, 512, 0);
 
-                // write new pixels
-                writePixels(buffer, 512 >> zoom, zoom);
+            if (this.partial) {
+                // zoomed out tiles are sampled from our pixels, so they need the whole tile
+                buffer.getRGB(0, 0, 512, 512, this.pixels, 0, 512);
+            }
 
-                // finally, save buffer to disk
-                this.io.write(filePath, buffer);
-            } catch (Throwable t) {
-                Logger.severe("Failed to read/write tile at path %s".formatted(filePath), t);
+            // finally, save buffer to disk if it actually changed
+            long written = hash(buffer);
+            if (written != hashes.getWritten(tile) || !store.exists(tile)) {
+                store.write(tile, this.io.encode(buffer), written);
+                changed = true;
             }
+            hashes.setRendered(tile, rendered);
+        } catch (Throwable t) {
+            error = t;
+        }
+
+        // ensure the file lock closes before throwing any errors
+        lock.writeLock().unlock();
 
-            lock.writeLock().unlock();
+        if (error != null) {
+            throw new RuntimeException("Failed to read/write tile %s".formatted(tile), error);
+        }
+
+        if (!changed) {
+            return;
+        }
+
+        // zoomed out tiles are shared with other regions, let the pyramid batch them up
+        for (int zoom = 1; zoom <= this.world.getConfig().ZOOM_MAX_OUT; zoom++) {
+            this.world.getTilePyramid().contribute(this, zoom);
         }
     }
 
-    private @NotNull BufferedImage getBuffer(@NotNull Path path) throws IOException {
+    /**
+     * Hash the pixels of a tile buffer.
+     *
+     * @param buffer Tile buffer
+     * @return 64 bit content hash
+     */
+    public static long hash(@NotNull BufferedImage buffer) {
+        int[] data = getData(buffer);
+        if (data == null) {
+            data = buffer.getRGB(0, 0, buffer.getWidth(), buffer.getHeight(), null, 0, buffer.getWidth());
+        }
+        return TileHashIndex.hash(data);
+    }
+
+    private @NotNull BufferedImage getBuffer(@NotNull TileStore store, @NotNull String tile) throws IOException {
         BufferedImage buffer = null;
 
         // try to read existing image
-        if (Files.exists(path) && Files.size(path) > 0) {
-            buffer = this.io.read(path);
+        byte[] data = store.read(tile);
+        if (data != null && data.length > 0) {
+            buffer = this.io.read(data);
         }
 
         // if not, create a new image
@@ -131,12 +189,15 @@ public class TileImage extends Keyed {
         return buffer;
     }
 
-    private void writePixels(@NotNull BufferedImage buffer, int size, int zoom) {
+    void writePixels(@NotNull BufferedImage buffer, int size, int zoom) {
         int step = 1 << zoom;
         int baseX = (this.region.x() * size) & 0x1FF;
         int baseZ = (this.region.z() * size) & 0x1FF;
-        for (int x = 0; x < 512; x += step) {
-            for (int z = 0; z < 512; z += step) {
+        // write straight into the backing array when we can, setRGB converts every pixel
+        int[] data = getData(buffer);
+        int width = buffer.getWidth();
+        for (int z = 0; z < 512; z += step) {
+            for (int x = 0; x < 512; x += step) {
                 int argb = getPixel(x, z);
                 if (argb == 0) {
                     // skipping 0 prevents overwrite existing
@@ -147,11 +208,25 @@ public class TileImage extends Keyed {
                     // merge pixel colors instead of skipping them
                     argb = downSample(x, z, argb, step);
                 }
-                buffer.setRGB(baseX + (x >> zoom), baseZ + (z >> zoom), this.io.color(argb));
+                int bufferX = baseX + (x >> zoom);
+                int bufferZ = baseZ + (z >> zoom);
+                if (data != null) {
+                    data[bufferZ * width + bufferX] = this.io.color(argb);
+                } else {
+                    buffer.setRGB(bufferX, bufferZ, this.io.color(argb));
+                }
             }
         }
     }
 
+    private static int @Nullable [] getData(@NotNull BufferedImage buffer) {
+        int type = buffer.getType();
+        if (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) {
+            return ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+        }
+        return null;
+    }
+
     private int downSample(int x, int z, int rgb, int step) {
         int a = 0, r = 0, g = 0, b = 0, c = 0;
         for (int i = 0; i < step; i++) {
@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.image.io.IO;
+import net.pl3x.map.core.image.store.TileStore;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.world.TileHashIndex;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Builds the zoomed out tiles of a world.
+ * <p>
+ * Regions drop their down sampled pixels into in-memory parent tiles, and each parent tile
+ * is only encoded once every region scheduled underneath it is done, or once it has been
+ * waiting longer than the flush interval. Recently written parents stay decoded, so small
+ * incremental renders and early flushed parents don't have to read them back from the store.
+ */
+public class TilePyramid {
+    private final World world;
+
+    // how many scheduled regions still have to finish under each parent cell
+    private final Map<@NotNull Cell, @NotNull Integer> expected = new ConcurrentHashMap<>();
+    private final Map<@NotNull Tile, @NotNull Parent> pending = new ConcurrentHashMap<>();
+    // the same pending parents, by cell, so finishing a region only looks at its own parents
+    private final Map<@NotNull Cell, @NotNull Set<@NotNull Parent>> pendingByCell = new ConcurrentHashMap<>();
+    private final Cache<@NotNull Tile, @NotNull BufferedImage> decoded;
+
+    public TilePyramid(@NotNull World world) {
+        this.world = world;
+        this.decoded = Caffeine.newBuilder()
+                .expireAfterAccess(5, TimeUnit.MINUTES)
+                .maximumSize(Math.max(0, Config.PYRAMID_CACHE_SIZE))
+                .build();
+    }
+
+    /**
+     * Let the pyramid know these regions are about to be rendered,
+     * so their parent tiles wait for all of them before being written.
+     *
+     * @param regions Regions about to be rendered
+     */
+    public void expect(@NotNull Collection<@NotNull Point> regions) {
+        int maxZoom = this.world.getConfig().ZOOM_MAX_OUT;
+        for (Point region : regions) {
+            for (int zoom = 1; zoom <= maxZoom; zoom++) {
+                this.expected.merge(new Cell(zoom, region.x() >> zoom, region.z() >> zoom), 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Add a rendered region's pixels to its parent tile at the given zoom level.
+     *
+     * @param image Rendered region image
+     * @param zoom  Zoom level of the parent tile
+     */
+    public void contribute(@NotNull TileImage image, int zoom) {
+        Point region = image.getRegion();
+        Tile tile = new Tile(image.getKey(), zoom, region.x() >> zoom, region.z() >> zoom);
+        while (true) {
+            Parent parent = this.pending.computeIfAbsent(tile, this::createParent);
+            synchronized (parent) {
+                if (parent.flushed) {
+                    // lost a race with a flush, start a fresh parent
+                    continue;
+                }
+                if (parent.buffer == null) {
+                    parent.buffer = decode(tile, image.getIO());
+                }
+                image.writePixels(parent.buffer, 512 >> zoom, zoom);
+                parent.io = image.getIO();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Mark a region as done, writing any parent tile that no longer waits on other regions.
+     *
+     * @param region Finished region
+     */
+    public void done(@NotNull Point region) {
+        int maxZoom = this.world.getConfig().ZOOM_MAX_OUT;
+        for (int zoom = 1; zoom <= maxZoom; zoom++) {
+            Cell cell = new Cell(zoom, region.x() >> zoom, region.z() >> zoom);
+            Integer left = this.expected.computeIfPresent(cell, (k, count) -> count > 1 ? count - 1 : null);
+            if (left == null) {
+                flush(cell);
+            }
+        }
+
+        // don't let parents with a straggling child sit around forever
+        long deadline = System.currentTimeMillis() - Config.PYRAMID_FLUSH_INTERVAL * 1000L;
+        this.pending.values().forEach(parent -> {
+            if (parent.created < deadline) {
+                write(parent);
+            }
+        });
+
+        // or pile up in memory, the oldest ones go back to the decoded cache when written
+        int overflow = this.pending.size() - Math.max(1, Config.PYRAMID_CACHE_SIZE);
+        if (overflow > 0) {
+            this.pending.values().stream()
+                    .sorted(Comparator.comparingLong(parent -> parent.created))
+                    .limit(overflow)
+                    .toList()
+                    .forEach(this::write);
+        }
+    }
+
+    /**
+     * Write every pending parent tile and forget all expectations.
+     */
+    public void flush() {
+        this.expected.clear();
+        this.pending.values().forEach(this::write);
+    }
+
+    private void flush(@NotNull Cell cell) {
+        Set<Parent> parents = this.pendingByCell.get(cell);
+        if (parents != null) {
+            parents.forEach(this::write);
+        }
+    }
+
+    private @NotNull Parent createParent(@NotNull Tile tile) {
+        Parent parent = new Parent(tile);
+        this.pendingByCell.compute(tile.cell(), (cell, parents) -> {
+            if (parents == null) {
+                parents = ConcurrentHashMap.newKeySet();
+            }
+            parents.add(parent);
+            return parents;
+        });
+        return parent;
+    }
+
+    private void write(@NotNull Parent parent) {
+        synchronized (parent) {
+            if (parent.flushed) {
+                return;
+            }
+            parent.flushed = true;
+            try {
+                if (parent.buffer != null && parent.io != null) {
+                    writeTile(parent);
+                }
+            } finally {
+                // only now can a new parent take over, it picks these pixels up from the decoded cache
+                this.pending.remove(parent.tile, parent);
+                this.pendingByCell.computeIfPresent(parent.tile.cell(), (cell, parents) -> {
+                    parents.remove(parent);
+                    return parents.isEmpty() ? null : parents;
+                });
+            }
+        }
+    }
+
+    private void writeTile(@NotNull Parent parent) {
+        TileStore store = this.world.getTileStore();
+        String name = getName(parent.tile, parent.io);
+        try {
+            // children can change without changing what shows at this zoom level
+            TileHashIndex hashes = this.world.getTileHashIndex();
+            long hash = TileImage.hash(parent.buffer);
+            if (hash != hashes.getWritten(name) || !store.exists(name)) {
+                store.write(name, parent.io.encode(parent.buffer), hash);
+            }
+        } catch (Throwable t) {
+            Logger.severe("Failed to write tile %s".formatted(name), t);
+        }
+        // even if writing failed these are the newest pixels, the next parent builds on them
+        this.decoded.put(parent.tile, parent.buffer);
+    }
+
+    private @NotNull BufferedImage decode(@NotNull Tile tile, IO.@NotNull Type io) {
+        BufferedImage buffer = this.decoded.asMap().remove(tile);
+        if (buffer != null) {
+            return buffer;
+        }
+        String name = getName(tile, io);
+        try {
+            byte[] data = this.world.getTileStore().read(name);
+            if (data != null && data.length > 0) {
+                buffer = io.read(data);
+            }
+        } catch (Throwable t) {
+            Logger.warn("Could not read tile image: " + name, t);
+        }
+        return buffer == null ? io.createBuffer() : buffer;
+    }
+
+    private @NotNull String getName(@NotNull Tile tile, IO.@NotNull Type io) {
+        return TileStore.name(tile.zoom(), tile.key(), tile.x(), tile.z(), io.getKey());
+    }
+
+    private record Cell(int zoom, int x, int z) {
+    }
+
+    private record Tile(@NotNull String key, int zoom, int x, int z) {
+        private @NotNull Cell cell() {
+            return new Cell(this.zoom, this.x, this.z);
+        }
+    }
+
+    private static class Parent {
+        private final Tile tile;
+        private final long created = System.currentTimeMillis();
+        private BufferedImage buffer;
+        private IO.Type io;
+        private boolean flushed;
+
+        private Parent(@NotNull Tile tile) {
+            this.tile = tile;
+        }
+    }
+}
@@ -24,7 +24,12 @@
 package net.pl3x.map.core.image.io;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Locale;
@@ -52,6 +57,7 @@ public abstract class IO {
         IO.register("jpg", new Jpg());
         IO.register("jpeg", get("jpg"));
         IO.register("png", new Png());
+        IO.register("png8", new Png8());
     }
 
     public static void register(@NotNull String name, @NotNull Type type) {
@@ -91,27 +97,61 @@ public abstract class IO {
         }
 
         public @Nullable BufferedImage read(@NotNull Path path) {
-            BufferedImage buffer = null;
+            try (InputStream in = Files.newInputStream(path)) {
+                return read(in);
+            } catch (IOException e) {
+                Logger.warn("Could not read tile image: " + path, e);
+                return null;
+            }
+        }
+
+        public @Nullable BufferedImage read(byte @NotNull [] data) {
+            try {
+                return read(new ByteArrayInputStream(data));
+            } catch (IOException e) {
+                Logger.warn("Could not read tile image", e);
+                return null;
+            }
+        }
+
+        public @Nullable BufferedImage read(@NotNull InputStream stream) throws IOException {
             ImageReader reader = null;
-            try (ImageInputStream in = ImageIO.createImageInputStream(Files.newInputStream(path))) {
+            try (ImageInputStream in = ImageIO.createImageInputStream(stream)) {
                 reader = ImageIO.getImageReadersBySuffix(getKey()).next();
                 reader.setInput(in, false, true);
-                buffer = reader.read(0);
+                BufferedImage buffer = reader.read(0);
                 in.flush();
-            } catch (IOException e) {
-                Logger.warn("Could not read tile image: " + path, e);
+                return buffer;
             } finally {
                 if (reader != null) {
                     reader.dispose();
                 }
             }
-            return buffer;
         }
 
         public void write(@NotNull Path path, @NotNull BufferedImage buffer) {
             Path tmp = FileUtil.tmp(path);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                write(out, buffer);
+            } catch (IOException e) {
+                Logger.warn("Could not write tile image: " + tmp, e);
+            }
+            try {
+                FileUtil.atomicMove(tmp, path);
+            } catch (IOException e) {
+                Logger.warn("Could not write tile image: " + path, e);
+            }
+        }
+
+        public byte @NotNull [] encode(@NotNull BufferedImage buffer) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(out, buffer);
+            return out.toByteArray();
+        }
+
+        public void write(@NotNull OutputStream stream, @NotNull BufferedImage buffer) throws IOException {
             ImageWriter writer = null;
-            try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(stream)) {
                 writer = ImageIO.getImageWritersBySuffix(getKey()).next();
                 ImageWriteParam param = writer.getDefaultWriteParam();
                 if (param.canWriteCompressed()) {
@@ -124,18 +164,11 @@ public abstract class IO {
                 writer.setOutput(out);
                 writer.write(null, new IIOImage(buffer, null, null), param);
                 out.flush();
-            } catch (IOException e) {
-                Logger.warn("Could not write tile image: " + tmp, e);
             } finally {
                 if (writer != null) {
                     writer.dispose();
                 }
             }
-            try {
-                FileUtil.atomicMove(tmp, path);
-            } catch (IOException e) {
-                Logger.warn("Could not write tile image: " + path, e);
-            }
         }
     }
 }
@@ -0,0 +1,292 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image.io;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Up to 256 colors of an image plus the palette index of every pixel.
+ * <p>
+ * Images with 256 or fewer distinct colors get an exact palette. Anything else is reduced
+ * with a median cut over a 5 bit per channel (2 bit alpha) histogram, optionally with 4x4
+ * ordered dithering. Fully transparent pixels always share a single palette entry.
+ */
+public class Palette {
+    private static final int[] BAYER = {
+            0, 8, 2, 10,
+            12, 4, 14, 6,
+            3, 11, 1, 9,
+            15, 7, 13, 5
+    };
+
+    private final int[] colors;
+    private final byte[] indices;
+
+    private Palette(int @NotNull [] colors, byte @NotNull [] indices) {
+        this.colors = colors;
+        this.indices = indices;
+    }
+
+    public int @NotNull [] getColors() {
+        return this.colors;
+    }
+
+    public byte @NotNull [] getIndices() {
+        return this.indices;
+    }
+
+    public static @NotNull Palette of(int @NotNull [] argb, int width, int height, boolean dither) {
+        Palette palette = exact(argb, width * height);
+        return palette != null ? palette : quantize(argb, width, height, dither);
+    }
+
+    private static Palette exact(int @NotNull [] argb, int length) {
+        // tiny open addressing map, bails out as soon as there are too many colors
+        int[] keys = new int[1024];
+        int[] slots = new int[1024];
+        Arrays.fill(slots, -1);
+        int[] colors = new int[256];
+        int size = 0;
+        byte[] indices = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int color = argb[i] >>> 24 == 0 ? 0 : argb[i];
+            int slot = (color * 0x9E3779B9) >>> 22;
+            while (slots[slot] != -1 && keys[slot] != color) {
+                slot = (slot + 1) & 1023;
+            }
+            if (slots[slot] == -1) {
+                if (size == 256) {
+                    return null;
+                }
+                keys[slot] = color;
+                slots[slot] = size;
+                colors[size++] = color;
+            }
+            indices[i] = (byte) slots[slot];
+        }
+        return new Palette(Arrays.copyOf(colors, size), indices);
+    }
+
+    private static @NotNull Palette quantize(int @NotNull [] argb, int width, int height, boolean dither) {
+        int length = width * height;
+
+        // histogram of the reduced colors
+        int[] count = new int[1 << 17];
+        int[] sumA = new int[1 << 17];
+        int[] sumR = new int[1 << 17];
+        int[] sumG = new int[1 << 17];
+        int[] sumB = new int[1 << 17];
+        boolean transparent = false;
+        for (int i = 0; i < length; i++) {
+            int color = argb[i];
+            if (color >>> 24 == 0) {
+                transparent = true;
+                continue;
+            }
+            int key = key(color);
+            count[key]++;
+            sumA[key] += color >>> 24;
+            sumR[key] += color >> 16 & 0xFF;
+            sumG[key] += color >> 8 & 0xFF;
+            sumB[key] += color & 0xFF;
+        }
+        int used = 0;
+        for (int c : count) {
+            if (c > 0) {
+                used++;
+            }
+        }
+        int[] entries = new int[used];
+        for (int key = 0, i = 0; key < count.length; key++) {
+            if (count[key] > 0) {
+                entries[i++] = key;
+            }
+        }
+
+        // median cut, boxes are ranges of the entries array
+        int maxBoxes = transparent ? 255 : 256;
+        int[] boxStart = new int[maxBoxes];
+        int[] boxEnd = new int[maxBoxes];
+        int[] boxWidest = new int[maxBoxes]; // extent << 2 | channel of the widest channel
+        int boxes = 0;
+        if (used > 0) {
+            boxEnd[0] = used;
+            boxWidest[0] = widest(entries, 0, used);
+            boxes = 1;
+        }
+        int[] scratch = new int[used];
+        while (boxes < maxBoxes) {
+            int best = -1;
+            for (int b = 0; b < boxes; b++) {
+                if (boxWidest[b] >> 2 > 0 && (best < 0 || boxWidest[b] > boxWidest[best])) {
+                    best = b;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int split = split(entries, scratch, count, boxStart[best], boxEnd[best], boxWidest[best] & 3);
+            boxStart[boxes] = split;
+            boxEnd[boxes] = boxEnd[best];
+            boxEnd[best] = split;
+            boxWidest[best] = widest(entries, boxStart[best], boxEnd[best]);
+            boxWidest[boxes] = widest(entries, boxStart[boxes], boxEnd[boxes]);
+            boxes++;
+        }
+
+        // each box becomes the weighted average of its colors
+        int offset = transparent ? 1 : 0;
+        int[] colors = new int[boxes + offset];
+        for (int b = 0; b < boxes; b++) {
+            long a = 0, r = 0, g = 0, bl = 0, n = 0;
+            for (int i = boxStart[b]; i < boxEnd[b]; i++) {
+                int key = entries[i];
+                a += sumA[key];
+                r += sumR[key];
+                g += sumG[key];
+                bl += sumB[key];
+                n += count[key];
+            }
+            colors[b + offset] = (int) (a / n) << 24 | (int) (r / n) << 16 | (int) (g / n) << 8 | (int) (bl / n);
+        }
+
+        // map every pixel to its nearest color, memoized per reduced color
+        int[] nearest = new int[1 << 17];
+        Arrays.fill(nearest, -1);
+        byte[] indices = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int color = argb[i];
+            if (color >>> 24 == 0) {
+                continue; // index 0 is the transparent entry
+            }
+            if (dither) {
+                int x = i % width;
+                int y = i / width;
+                color = dither(color, BAYER[(y & 3) << 2 | (x & 3)]);
+            }
+            int key = key(color);
+            int index = nearest[key];
+            if (index < 0) {
+                index = nearest[key] = nearest(colors, offset, color);
+            }
+            indices[i] = (byte) index;
+        }
+        return new Palette(colors, indices);
+    }
+
+    private static int key(int color) {
+        return (color >>> 30) << 15 | (color >> 19 & 0x1F) << 10 | (color >> 11 & 0x1F) << 5 | (color >> 3 & 0x1F);
+    }
+
+    private static int channel(int key, int channel) {
+        // scaled so every channel is measured in 0-255 steps
+        return switch (channel) {
+            case 0 -> (key >> 15) * 85;
+            case 1 -> (key >> 10 & 0x1F) << 3;
+            case 2 -> (key >> 5 & 0x1F) << 3;
+            default -> (key & 0x1F) << 3;
+        };
+    }
+
+    private static int widest(int @NotNull [] entries, int start, int end) {
+        int widest = 0;
+        for (int channel = 0; channel < 4; channel++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = start; i < end; i++) {
+                int value = channel(entries[i], channel);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widest >> 2) {
+                widest = (max - min) << 2 | channel;
+            }
+        }
+        return widest;
+    }
+
+    private static int split(int @NotNull [] entries, int @NotNull [] scratch, int @NotNull [] count, int start, int end, int channel) {
+        // counting sort the box along the channel, then cut where half the pixels are on each side
+        int[] buckets = new int[33];
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            buckets[bucket(entries[i], channel) + 1]++;
+            total += count[entries[i]];
+        }
+        for (int i = 1; i < buckets.length; i++) {
+            buckets[i] += buckets[i - 1];
+        }
+        for (int i = start; i < end; i++) {
+            scratch[start + buckets[bucket(entries[i], channel)]++] = entries[i];
+        }
+        System.arraycopy(scratch, start, entries, start, end - start);
+
+        long half = 0;
+        for (int i = start; i < end - 1; i++) {
+            half += count[entries[i]];
+            if (half * 2 >= total) {
+                return i + 1;
+            }
+        }
+        return end - 1;
+    }
+
+    private static int bucket(int key, int channel) {
+        return switch (channel) {
+            case 0 -> key >> 15;
+            case 1 -> key >> 10 & 0x1F;
+            case 2 -> key >> 5 & 0x1F;
+            default -> key & 0x1F;
+        };
+    }
+
+    private static int dither(int color, int threshold) {
+        // spread the 8 steps lost to the 5 bit histogram over the 4x4 pattern
+        int offset = (threshold >> 1) - 4;
+        int r = Math.max(0, Math.min(0xFF, (color >> 16 & 0xFF) + offset));
+        int g = Math.max(0, Math.min(0xFF, (color >> 8 & 0xFF) + offset));
+        int b = Math.max(0, Math.min(0xFF, (color & 0xFF) + offset));
+        return color & 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private static int nearest(int @NotNull [] colors, int from, int color) {
+        int a = color >>> 24, r = color >> 16 & 0xFF, g = color >> 8 & 0xFF, b = color & 0xFF;
+        int best = from;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = from; i < colors.length; i++) {
+            int c = colors[i];
+            int da = a - (c >>> 24);
+            int dr = r - (c >> 16 & 0xFF);
+            int dg = g - (c >> 8 & 0xFF);
+            int db = b - (c & 0xFF);
+            int distance = da * da + dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
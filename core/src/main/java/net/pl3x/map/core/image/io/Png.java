@@ -23,8 +23,54 @@
  */
 package net.pl3x.map.core.image.io;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.pl3x.map.core.configuration.Config;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 public class Png extends IO.Type {
     public Png() {
         super("png");
     }
+
+    @Override
+    public @Nullable BufferedImage read(@NotNull InputStream stream) throws IOException {
+        BufferedImage buffer = super.read(stream);
+        if (buffer == null || buffer.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return buffer;
+        }
+        // opaque tiles come back as RGB, we need the alpha channel to keep drawing on them
+        BufferedImage argb = createBuffer();
+        argb.getGraphics().drawImage(buffer, 0, 0, null);
+        return argb;
+    }
+
+    @Override
+    public void write(@NotNull OutputStream out, @NotNull BufferedImage buffer) throws IOException {
+        encode(getPixels(buffer), buffer.getWidth(), buffer.getHeight(), out);
+    }
+
+    protected void encode(int @NotNull [] argb, int width, int height, @NotNull OutputStream out) throws IOException {
+        createEncoder().encode(argb, width, height, out);
+    }
+
+    protected @NotNull PngEncoder createEncoder() {
+        return new PngEncoder(
+                PngEncoder.Filter.get(Config.WEB_TILE_PNG_FILTER),
+                Config.WEB_TILE_PNG_COMPRESSION,
+                Config.WEB_TILE_PNG_STRIPS
+        );
+    }
+
+    private int @NotNull [] getPixels(@NotNull BufferedImage buffer) {
+        if (buffer.getType() == BufferedImage.TYPE_INT_ARGB) {
+            // no copy needed, encode straight from the backing array
+            return ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+        }
+        return buffer.getRGB(0, 0, buffer.getWidth(), buffer.getHeight(), null, 0, buffer.getWidth());
+    }
 }
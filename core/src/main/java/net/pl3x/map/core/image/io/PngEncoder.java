@@ -0,0 +1,323 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Minimal PNG encoder writing straight from ARGB pixel arrays.
+ * <p>
+ * Fully opaque images are written as RGB, everything else as RGBA, or as 8 bit indexed color
+ * from a {@link Palette}. The filtered image data can be split into strips that are deflated
+ * in parallel, each strip primed with the tail of the previous one as its dictionary so the
+ * combined stream stays a single valid zlib stream.
+ */
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int WINDOW = 32768;
+
+    // one per level, changing the level of a primed deflater would drop its dictionary
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[10]);
+
+    private final Filter filter;
+    private final int level;
+    private final int strips;
+
+    public PngEncoder(@NotNull Filter filter, int level, int strips) {
+        this.filter = filter;
+        this.level = Math.max(0, Math.min(9, level));
+        this.strips = Math.max(1, strips);
+    }
+
+    public void encode(int @NotNull [] argb, int width, int height, @NotNull OutputStream out) throws IOException {
+        boolean opaque = isOpaque(argb, width * height);
+        int bpp = opaque ? 3 : 4;
+        int stride = width * bpp + 1;
+
+        byte[] filtered = new byte[height * stride];
+        byte[] prev = new byte[stride - 1];
+        byte[] cur = new byte[stride - 1];
+        byte[] scratch = this.filter == Filter.ADAPTIVE ? new byte[stride] : null;
+        for (int y = 0; y < height; y++) {
+            unpack(argb, y * width, width, opaque, cur);
+            filterRow(cur, prev, bpp, filtered, y * stride, scratch);
+            byte[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+
+        write(out, width, height, opaque ? 2 : 6, filtered, stride, null, null);
+    }
+
+    /**
+     * Encode the pixels as an 8 bit indexed png.
+     *
+     * @param palette Palette and indices of the pixels
+     * @param width   Image width
+     * @param height  Image height
+     * @param out     Stream to write to
+     * @throws IOException if the stream could not be written
+     */
+    public void encodeIndexed(@NotNull Palette palette, int width, int height, @NotNull OutputStream out) throws IOException {
+        int stride = width + 1;
+        byte[] indices = palette.getIndices();
+
+        // filters rarely pay off on palette indices, keep rows unfiltered
+        byte[] filtered = new byte[height * stride];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(indices, y * width, filtered, y * stride + 1, width);
+        }
+
+        int[] colors = palette.getColors();
+        byte[] plte = new byte[colors.length * 3];
+        int trns = 0;
+        for (int i = 0; i < colors.length; i++) {
+            plte[i * 3] = (byte) (colors[i] >> 16);
+            plte[i * 3 + 1] = (byte) (colors[i] >> 8);
+            plte[i * 3 + 2] = (byte) colors[i];
+            if (colors[i] >>> 24 != 0xFF) {
+                trns = i + 1;
+            }
+        }
+        // alpha entries after the last translucent color default to opaque
+        byte[] alpha = new byte[trns];
+        for (int i = 0; i < trns; i++) {
+            alpha[i] = (byte) (colors[i] >>> 24);
+        }
+
+        write(out, width, height, 3, filtered, stride, plte, alpha);
+    }
+
+    private void write(@NotNull OutputStream out, int width, int height, int colorType, byte @NotNull [] filtered, int stride, byte @Nullable [] plte, byte @Nullable [] trns) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(ihdr);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8); // bit depth
+        header.writeByte(colorType);
+        header.writeByte(0); // deflate
+        header.writeByte(0); // adaptive filtering
+        header.writeByte(0); // no interlace
+        writeChunk(data, "IHDR", ihdr.toByteArray());
+
+        if (plte != null) {
+            writeChunk(data, "PLTE", plte);
+        }
+        if (trns != null && trns.length > 0) {
+            writeChunk(data, "tRNS", trns);
+        }
+
+        writeChunk(data, "IDAT", compress(filtered, height, stride));
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    private boolean isOpaque(int @NotNull [] argb, int length) {
+        for (int i = 0; i < length; i++) {
+            if (argb[i] >>> 24 != 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void unpack(int @NotNull [] argb, int offset, int width, boolean opaque, byte @NotNull [] row) {
+        int j = 0;
+        for (int i = offset; i < offset + width; i++) {
+            int pixel = argb[i];
+            row[j++] = (byte) (pixel >> 16);
+            row[j++] = (byte) (pixel >> 8);
+            row[j++] = (byte) pixel;
+            if (!opaque) {
+                row[j++] = (byte) (pixel >>> 24);
+            }
+        }
+    }
+
+    private void filterRow(byte @NotNull [] cur, byte @NotNull [] prev, int bpp, byte @NotNull [] dst, int offset, byte[] scratch) {
+        if (this.filter != Filter.ADAPTIVE) {
+            filterRow(this.filter.ordinal(), cur, prev, bpp, dst, offset);
+            return;
+        }
+        // pick the filter with the smallest sum of absolute differences, the usual heuristic
+        long best = Long.MAX_VALUE;
+        int bestType = 0;
+        for (int type = 0; type < 5; type++) {
+            filterRow(type, cur, prev, bpp, scratch, 0);
+            long sum = 0;
+            for (int i = 1; i < scratch.length; i++) {
+                sum += Math.abs(scratch[i]);
+            }
+            if (sum < best) {
+                best = sum;
+                bestType = type;
+            }
+        }
+        filterRow(bestType, cur, prev, bpp, dst, offset);
+    }
+
+    private void filterRow(int type, byte @NotNull [] cur, byte @NotNull [] prev, int bpp, byte @NotNull [] dst, int offset) {
+        dst[offset++] = (byte) type;
+        int length = cur.length;
+        switch (type) {
+            case 0 -> System.arraycopy(cur, 0, dst, offset, length);
+            case 1 -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i < bpp ? 0 : cur[i - bpp] & 0xFF;
+                    dst[offset + i] = (byte) ((cur[i] & 0xFF) - left);
+                }
+            }
+            case 2 -> {
+                for (int i = 0; i < length; i++) {
+                    dst[offset + i] = (byte) ((cur[i] & 0xFF) - (prev[i] & 0xFF));
+                }
+            }
+            case 3 -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i < bpp ? 0 : cur[i - bpp] & 0xFF;
+                    dst[offset + i] = (byte) ((cur[i] & 0xFF) - ((left + (prev[i] & 0xFF)) >> 1));
+                }
+            }
+            default -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i < bpp ? 0 : cur[i - bpp] & 0xFF;
+                    int up = prev[i] & 0xFF;
+                    int upLeft = i < bpp ? 0 : prev[i - bpp] & 0xFF;
+                    dst[offset + i] = (byte) ((cur[i] & 0xFF) - paeth(left, up, upLeft));
+                }
+            }
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private byte @NotNull [] compress(byte @NotNull [] filtered, int rows, int stride) throws IOException {
+        int strips = Math.min(this.strips, rows);
+        int rowsPerStrip = (rows + strips - 1) / strips;
+        strips = (rows + rowsPerStrip - 1) / rowsPerStrip;
+
+        byte[][] parts = new byte[strips][];
+        int count = strips;
+        IntStream range = IntStream.range(0, count);
+        (count > 1 ? range.parallel() : range).forEach(i -> {
+            int start = i * rowsPerStrip * stride;
+            int end = Math.min(rows, (i + 1) * rowsPerStrip) * stride;
+            parts[i] = deflate(filtered, start, end, i == count - 1);
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(filtered.length >> 2);
+        out.write(0x78); // deflate, 32k window
+        out.write(0x9C); // no preset dictionary
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        Adler32 adler = new Adler32();
+        adler.update(filtered, 0, filtered.length);
+        long checksum = adler.getValue();
+        out.write((int) (checksum >> 24));
+        out.write((int) (checksum >> 16));
+        out.write((int) (checksum >> 8));
+        out.write((int) checksum);
+        return out.toByteArray();
+    }
+
+    private byte @NotNull [] deflate(byte @NotNull [] input, int start, int end, boolean last) {
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[this.level];
+        if (deflater == null) {
+            deflater = deflaters[this.level] = new Deflater(this.level, true);
+        } else {
+            deflater.reset();
+        }
+        if (start > 0) {
+            // let this strip refer back into the previous one like a single stream would
+            int from = Math.max(0, start - WINDOW);
+            deflater.setDictionary(input, from, start - from);
+        }
+        deflater.setInput(input, start, end - start);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, (end - start) >> 2));
+        byte[] buf = new byte[8192];
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+        } else {
+            // sync flush ends the strip on a byte boundary without closing the stream
+            int length;
+            do {
+                length = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                out.write(buf, 0, length);
+            } while (length == buf.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeChunk(@NotNull DataOutputStream out, @NotNull String type, byte @NotNull [] data) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(name);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE;
+
+        public static @NotNull Filter get(@NotNull String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return PAETH;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image.store;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Stream;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Every tile is its own file under the world's tiles directory.
+ */
+public class FileTileStore extends TileStore {
+    public FileTileStore(@NotNull World world) {
+        super(world);
+    }
+
+    @Override
+    public boolean exists(@NotNull String tile) {
+        return Files.exists(getFile(tile));
+    }
+
+    @Override
+    public byte @Nullable [] read(@NotNull String tile) throws IOException {
+        Path path = getFile(tile);
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return null;
+        }
+        return Files.readAllBytes(path);
+    }
+
+    @Override
+    public void write(@NotNull String tile, byte @NotNull [] data) throws IOException {
+        Path path = getFile(tile);
+        Path tmp = FileUtil.tmp(path);
+        try (OutputStream out = Files.newOutputStream(FileUtil.mkDirs(tmp))) {
+            out.write(data);
+        }
+        FileUtil.atomicMove(tmp, path);
+    }
+
+    @Override
+    public @NotNull Collection<@NotNull String> list(int zoom, @NotNull String renderer) throws IOException {
+        Path dir = getFile(name(zoom, renderer, 0, 0, "")).getParent();
+        if (!Files.exists(dir)) {
+            return Collections.emptyList();
+        }
+        String prefix = getWorld().getTilesDirectory().relativize(dir).toString().replace('\\', '/') + "/";
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.map(path -> path.getFileName().toString())
+                    .filter(name -> !name.startsWith("."))
+                    .map(name -> prefix + name)
+                    .toList();
+        }
+    }
+
+    @Override
+    public @NotNull Path getFile(@NotNull String tile) {
+        return getWorld().getTilesDirectory().resolve(tile);
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Tiles packed together, one pack file per 32x32 tiles of a renderer and zoom level.
+ * <p>
+ * Packs are append-only: a rewritten tile is added to the end and the older copy becomes dead
+ * space. The index of a pack is rebuilt from the record headers when it is opened, and packs
+ * are rewritten without their dead records once those take up too much of the file.
+ */
+public class PackedTileStore extends TileStore {
+    private static final int AREA_SHIFT = 5;
+    private static final int MAX_OPEN_PACKS = 256;
+    private static final long IDLE_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    // exactly one pack per file, packs are only closed and dropped while nobody uses them
+    private final Map<@NotNull String, @NotNull Pack> packs = new ConcurrentHashMap<>();
+
+    public PackedTileStore(@NotNull World world) {
+        super(world);
+    }
+
+    @Override
+    public boolean exists(@NotNull String tile) {
+        try {
+            return withPack(getPackKey(tile), pack -> pack.has(entry(tile)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public byte @Nullable [] read(@NotNull String tile) throws IOException {
+        return withPack(getPackKey(tile), pack -> pack.read(entry(tile)));
+    }
+
+    @Override
+    public void write(@NotNull String tile, byte @NotNull [] data) throws IOException {
+        withPack(getPackKey(tile), pack -> {
+            pack.write(entry(tile), data);
+            return null;
+        });
+    }
+
+    @Override
+    public @NotNull Collection<@NotNull String> list(int zoom, @NotNull String renderer) throws IOException {
+        String prefix = zoom + "/" + renderer + "/";
+        Path dir = getWorld().getTilesDirectory().resolve(prefix);
+        if (!Files.exists(dir)) {
+            return Collections.emptyList();
+        }
+        List<String> tiles = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path path : stream.toList()) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(".pack")) {
+                    continue;
+                }
+                for (String entry : withPack(prefix + name.substring(0, name.length() - 5), Pack::entries)) {
+                    tiles.add(prefix + entry);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    @Override
+    public @Nullable Path getFile(@NotNull String tile) {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        this.packs.keySet().forEach(key -> evict(key, 0L));
+    }
+
+    private <T> T withPack(@NotNull String key, @NotNull PackFunction<T> function) throws IOException {
+        Pack pack = this.packs.compute(key, (k, open) -> {
+            if (open == null) {
+                open = new Pack(getWorld().getTilesDirectory().resolve(k + ".pack"));
+            }
+            open.users++;
+            return open;
+        });
+        try {
+            return function.apply(pack);
+        } finally {
+            this.packs.computeIfPresent(key, (k, open) -> {
+                open.users--;
+                open.lastUsed = System.currentTimeMillis();
+                return open;
+            });
+            if (this.packs.size() > MAX_OPEN_PACKS) {
+                evictIdle();
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        this.packs.keySet().forEach(key -> evict(key, now - IDLE_TIME));
+        if (this.packs.size() > MAX_OPEN_PACKS) {
+            // still too many files open, close the least recently used ones
+            this.packs.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                    .limit(this.packs.size() - MAX_OPEN_PACKS)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(key -> evict(key, Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Close a pack if nobody is using it and it was last used before the given time.
+     *
+     * @param key        Pack key
+     * @param usedBefore Only close if last used before this time, 0 to close regardless
+     */
+    private void evict(@NotNull String key, long usedBefore) {
+        this.packs.computeIfPresent(key, (k, pack) -> {
+            boolean recent = usedBefore != 0L && pack.lastUsed >= usedBefore;
+            if (pack.users > 0 || recent) {
+                return pack;
+            }
+            pack.close();
+            return null;
+        });
+    }
+
+    private @NotNull String getPackKey(@NotNull String tile) throws IOException {
+        if (tile.contains("..")) {
+            throw new IOException("Not a tile name: " + tile);
+        }
+        int slash = tile.lastIndexOf('/');
+        String file = tile.substring(slash + 1);
+        int underscore = file.indexOf('_');
+        int dot = file.indexOf('.', underscore);
+        if (slash < 0 || underscore < 0 || dot < 0) {
+            throw new IOException("Not a tile name: " + tile);
+        }
+        try {
+            int x = Integer.parseInt(file.substring(0, underscore)) >> AREA_SHIFT;
+            int z = Integer.parseInt(file.substring(underscore + 1, dot)) >> AREA_SHIFT;
+            return tile.substring(0, slash + 1) + x + "_" + z;
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a tile name: " + tile, e);
+        }
+    }
+
+    private @NotNull String entry(@NotNull String tile) {
+        return tile.substring(tile.lastIndexOf('/') + 1);
+    }
+
+    @FunctionalInterface
+    private interface PackFunction<T> {
+        T apply(@NotNull Pack pack) throws IOException;
+    }
+
+    private static class Pack {
+        private static final int MAGIC = 0x706C3374; // pl3t
+
+        private final Path path;
+        private final Map<@NotNull String, @NotNull Entry> index = new HashMap<>();
+
+        // only touched inside the packs map's compute calls
+        private int users;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private FileChannel channel;
+        private long size;
+        private long live;
+
+        private Pack(@NotNull Path path) {
+            this.path = path;
+        }
+
+        private synchronized boolean has(@NotNull String name) throws IOException {
+            return channel(false) != null && this.index.containsKey(name);
+        }
+
+        private synchronized @NotNull List<@NotNull String> entries() throws IOException {
+            if (channel(false) == null) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<>(this.index.keySet());
+        }
+
+        private synchronized byte @Nullable [] read(@NotNull String name) throws IOException {
+            FileChannel channel = channel(false);
+            if (channel == null) {
+                return null;
+            }
+            Entry entry = this.index.get(name);
+            if (entry == null) {
+                return null;
+            }
+            // only the tile's own bytes are read from the pack
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+            readFully(channel, buffer, entry.offset());
+            return buffer.array();
+        }
+
+        private synchronized void write(@NotNull String name, byte @NotNull [] data) throws IOException {
+            FileChannel channel = channel(true);
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int header = 4 + 2 + bytes.length + 8 + 4;
+            ByteBuffer record = ByteBuffer.allocate(header + data.length);
+            record.putInt(MAGIC);
+            record.putShort((short) bytes.length);
+            record.put(bytes);
+            record.putLong(System.currentTimeMillis());
+            record.putInt(data.length);
+            record.put(data);
+            record.flip();
+            long position = this.size;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            put(name, new Entry(this.size + header, data.length, header + data.length));
+            this.size = position;
+
+            long dead = this.size - this.live;
+            if (this.size > 1 << 20 && dead > this.size * Config.WEB_TILE_PACK_COMPACT_RATIO) {
+                compact();
+            }
+        }
+
+        private synchronized void close() {
+            if (this.channel != null) {
+                try {
+                    this.channel.close();
+                } catch (IOException ignore) {
+                }
+                this.channel = null;
+            }
+        }
+
+        private @Nullable FileChannel channel(boolean create) throws IOException {
+            if (this.channel == null || !this.channel.isOpen()) {
+                if (!create && !Files.exists(this.path)) {
+                    // don't leave empty packs behind for tiles that were only looked for
+                    return null;
+                }
+                open();
+            }
+            return this.channel;
+        }
+
+        private void open() throws IOException {
+            FileUtil.createDirs(this.path.getParent());
+            this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.index.clear();
+            this.live = 0;
+
+            // rebuild the index from the record headers
+            long end = this.channel.size();
+            long position = 0;
+            ByteBuffer head = ByteBuffer.allocate(6);
+            ByteBuffer tail = ByteBuffer.allocate(12);
+            while (position < end) {
+                try {
+                    head.clear();
+                    readFully(this.channel, head, position);
+                    if (head.getInt(0) != MAGIC) {
+                        break;
+                    }
+                    byte[] bytes = new byte[head.getShort(4) & 0xFFFF];
+                    readFully(this.channel, ByteBuffer.wrap(bytes), position + 6);
+                    tail.clear();
+                    readFully(this.channel, tail, position + 6 + bytes.length);
+                    int length = tail.getInt(8);
+                    int header = 6 + bytes.length + 12;
+                    if (length < 0 || position + header + length > end) {
+                        break;
+                    }
+                    put(new String(bytes, StandardCharsets.UTF_8), new Entry(position + header, length, header + length));
+                    position += header + length;
+                } catch (IOException e) {
+                    break;
+                }
+            }
+            if (position < end) {
+                // drop a record that was cut off half way through
+                Logger.debug("Truncating damaged tile pack " + this.path + " at " + position);
+                this.channel.truncate(position);
+            }
+            this.size = position;
+        }
+
+        private void put(@NotNull String name, @NotNull Entry entry) {
+            Entry old = this.index.put(name, entry);
+            if (old != null) {
+                this.live -= old.record();
+            }
+            this.live += entry.record();
+        }
+
+        private void compact() throws IOException {
+            Path tmp = FileUtil.tmp(this.path);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Entry entry : this.index.values()) {
+                    // copy the whole record, header and all
+                    long from = entry.offset() + entry.length() - entry.record();
+                    long copied = 0;
+                    while (copied < entry.record()) {
+                        copied += this.channel.transferTo(from + copied, entry.record() - copied, out);
+                    }
+                }
+                out.force(false);
+            }
+            close();
+            FileUtil.atomicMove(tmp, this.path);
+            open();
+        }
+
+        private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of tile pack");
+                }
+                position += read;
+            }
+        }
+
+        private record Entry(long offset, int length, int record) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.image.TileImage;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Where the tiles of a world are kept.
+ * <p>
+ * Tiles are addressed by their path relative to the world's tiles directory, see
+ * {@link #name(int, String, int, int, String)}, whether or not they end up as a file there.
+ */
+public abstract class TileStore {
+    private final World world;
+
+    public TileStore(@NotNull World world) {
+        this.world = world;
+    }
+
+    public static @NotNull TileStore create(@NotNull World world) {
+        TileStore store = switch (Config.WEB_TILE_STORE.toLowerCase(Locale.ROOT)) {
+            case "packed" -> new PackedTileStore(world);
+            default -> new FileTileStore(world);
+        };
+        return new WriteBehindTileStore(store);
+    }
+
+    /**
+     * Get the name of a tile.
+     *
+     * @param zoom      Zoom level
+     * @param renderer  Renderer key
+     * @param x         Tile X coordinate
+     * @param z         Tile Z coordinate
+     * @param extension File extension
+     * @return Tile name, like {@code 0/basic/-1_2.png}
+     */
+    public static @NotNull String name(int zoom, @NotNull String renderer, int x, int z, @NotNull String extension) {
+        return String.format(TileImage.DIR_PATH, zoom, renderer) + String.format(TileImage.FILE_PATH, x, z, extension);
+    }
+
+    public @NotNull World getWorld() {
+        return this.world;
+    }
+
+    public abstract boolean exists(@NotNull String tile);
+
+    /**
+     * Read the stored bytes of a tile.
+     *
+     * @param tile Tile name
+     * @return Tile bytes, or null if there is no such tile
+     * @throws IOException if the tile could not be read
+     */
+    public abstract byte @Nullable [] read(@NotNull String tile) throws IOException;
+
+    public abstract void write(@NotNull String tile, byte @NotNull [] data) throws IOException;
+
+    /**
+     * Write the bytes of a tile and record the hash of its pixels as written.
+     *
+     * @param tile Tile name
+     * @param data Tile bytes
+     * @param hash Hash of the tile's pixels
+     * @throws IOException if the tile could not be written
+     */
+    public void write(@NotNull String tile, byte @NotNull [] data, long hash) throws IOException {
+        write(tile, data);
+        getWorld().getTileHashIndex().setWritten(tile, hash);
+    }
+
+    /**
+     * List the names of every stored tile of a renderer at a zoom level.
+     *
+     * @param zoom     Zoom level
+     * @param renderer Renderer key
+     * @return Tile names
+     * @throws IOException if the tiles could not be listed
+     */
+    public abstract @NotNull Collection<@NotNull String> list(int zoom, @NotNull String renderer) throws IOException;
+
+    /**
+     * Get the plain file backing a tile, if tiles are stored as plain files.
+     *
+     * @param tile Tile name
+     * @return File path, or null if this store does not keep tiles as files
+     */
+    public abstract @Nullable Path getFile(@NotNull String tile);
+
+    /**
+     * Write out any tiles still held in memory, blocking until they are stored.
+     */
+    public void flush() {
+    }
+
+    /**
+     * Release any open files. The store stays usable and reopens them as needed.
+     */
+    public void close() {
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.image.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds on to written tiles for a short while before handing them to the backing store
+ * on the tile writer threads.
+ * <p>
+ * A tile written again before it made it to the backing store only replaces the waiting
+ * bytes, so tiles that many regions touch in a row are written once. Reads see the waiting
+ * bytes, so callers can't tell the difference. Once the waiting tiles take up more than the
+ * memory budget, writers wait a while for the tile writer threads to catch up.
+ */
+public class WriteBehindTileStore extends TileStore {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long MAX_BUDGET_WAIT = 10000L;
+
+    private final TileStore store;
+    private final Map<@NotNull String, @NotNull Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Object[] locks = new Object[64];
+
+    public WriteBehindTileStore(@NotNull TileStore store) {
+        super(store.getWorld());
+        this.store = store;
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    public @NotNull TileStore getStore() {
+        return this.store;
+    }
+
+    @Override
+    public boolean exists(@NotNull String tile) {
+        return this.pending.containsKey(tile) || this.store.exists(tile);
+    }
+
+    @Override
+    public byte @Nullable [] read(@NotNull String tile) throws IOException {
+        Pending entry = this.pending.get(tile);
+        return entry != null ? entry.data() : this.store.read(tile);
+    }
+
+    @Override
+    public void write(@NotNull String tile, byte @NotNull [] data) throws IOException {
+        write(tile, data, 0L);
+    }
+
+    /**
+     * Queue the bytes of a tile. The written hash is only recorded once the backing store has them,
+     * until then the web server keeps tagging the tile with the hash of the bytes it still serves.
+     */
+    @Override
+    public void write(@NotNull String tile, byte @NotNull [] data, long hash) throws IOException {
+        ScheduledExecutorService executor = Pl3xMap.api().getTileWriterExecutor();
+        Pending old = this.pending.put(tile, new Pending(data, hash, 0));
+        this.pendingBytes.addAndGet(data.length - (old == null ? 0 : old.data().length));
+        if (executor == null || executor.isShutdown()) {
+            // write through, going by way of the pending map so older waiting bytes can't win
+            if (!store(tile)) {
+                Pending left = this.pending.get(tile);
+                if (left != null && left.data() == data) {
+                    throw new IOException("Failed to write tile " + tile);
+                }
+            }
+            return;
+        }
+        if (old == null) {
+            // first write since the tile was last stored, later ones ride along
+            schedule(executor, tile);
+        }
+
+        long budget = Math.max(1, Config.TILE_WRITER_MEMORY) * 1024L * 1024L;
+        long deadline = System.currentTimeMillis() + MAX_BUDGET_WAIT;
+        synchronized (this.pendingBytes) {
+            // don't wait forever, the tile writers might not be getting anywhere
+            while (this.pendingBytes.get() > budget && !executor.isShutdown() && System.currentTimeMillis() < deadline) {
+                try {
+                    this.pendingBytes.wait(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public @NotNull Collection<@NotNull String> list(int zoom, @NotNull String renderer) throws IOException {
+        Set<String> tiles = new LinkedHashSet<>(this.store.list(zoom, renderer));
+        String prefix = TileStore.name(zoom, renderer, 0, 0, "");
+        prefix = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+        for (String tile : this.pending.keySet()) {
+            if (tile.startsWith(prefix)) {
+                tiles.add(tile);
+            }
+        }
+        return tiles;
+    }
+
+    @Override
+    public @Nullable Path getFile(@NotNull String tile) {
+        return this.store.getFile(tile);
+    }
+
+    /**
+     * Write every waiting tile to the backing store on the calling thread.
+     * <p>
+     * Returns once each of them is stored or was given up on.
+     */
+    @Override
+    public void flush() {
+        for (String tile : this.pending.keySet()) {
+            while (!store(tile)) {
+                // replaced while it was being written, or it failed and has attempts left
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Write every waiting tile to the backing store on the calling thread, then close it.
+     */
+    @Override
+    public void close() {
+        flush();
+        this.store.close();
+    }
+
+    private void schedule(@NotNull ScheduledExecutorService executor, @NotNull String tile) {
+        try {
+            executor.schedule(() -> {
+                if (!store(tile)) {
+                    // replaced while it was being written or the write failed, try again next window
+                    schedule(executor, tile);
+                }
+            }, Math.max(0, Config.TILE_WRITER_DELAY), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            store(tile);
+        }
+    }
+
+    private boolean store(@NotNull String tile) {
+        synchronized (this.locks[tile.hashCode() & (this.locks.length - 1)]) {
+            Pending entry = this.pending.get(tile);
+            if (entry == null) {
+                return true;
+            }
+            try {
+                this.store.write(tile, entry.data());
+            } catch (Throwable t) {
+                if (entry.attempts() + 1 < MAX_ATTEMPTS) {
+                    Logger.warn("Failed to write tile %s, trying again".formatted(tile), t);
+                    this.pending.replace(tile, entry, entry.failed());
+                    return false;
+                }
+                Logger.severe("Failed to write tile %s, giving up after %d attempts".formatted(tile, MAX_ATTEMPTS), t);
+                if (!this.pending.remove(tile, entry)) {
+                    return false;
+                }
+                // forget the tile was ever drawn, so the next render of its region draws it again
+                getWorld().getTileHashIndex().forget(tile);
+                release(entry);
+                return true;
+            }
+            if (entry.hash() != 0L) {
+                getWorld().getTileHashIndex().setWritten(tile, entry.hash());
+            }
+            if (!this.pending.remove(tile, entry)) {
+                return false;
+            }
+            release(entry);
+        }
+        return true;
+    }
+
+    private void release(@NotNull Pending entry) {
+        this.pendingBytes.addAndGet(-entry.data().length);
+        synchronized (this.pendingBytes) {
+            this.pendingBytes.notifyAll();
+        }
+    }
+
+    private record Pending(byte @NotNull [] data, long hash, int attempts) {
+        private @NotNull Pending failed() {
+            return new Pending(this.data, this.hash, this.attempts + 1);
+        }
+    }
+}
@@ -33,6 +33,22 @@ public interface Area {
 
     boolean containsRegion(int regionX, int regionZ);
 
+    /**
+     * Check if every block of a box is inside this area.
+     * <p>
+     * The default checks the four corners, which is exact for convex areas.
+     * Areas that aren't convex need to override this.
+     *
+     * @param minX Min block X of the box
+     * @param minZ Min block Z of the box
+     * @param maxX Max block X of the box
+     * @param maxZ Max block Z of the box
+     * @return True if the whole box is inside this area
+     */
+    default boolean containsBlocks(int minX, int minZ, int maxX, int maxZ) {
+        return containsBlock(minX, minZ) && containsBlock(maxX, minZ) && containsBlock(minX, maxZ) && containsBlock(maxX, maxZ);
+    }
+
     Map<String, Object> serialize();
 
     static Area deserialize(World world, Map<String, Object> map) {
@@ -33,16 +33,20 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 import javax.management.openmbean.KeyAlreadyExistsException;
+import net.pl3x.map.core.configuration.ColorsConfig;
 import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.world.Biome;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class BiomeRegistry extends Registry<@NotNull Biome> {
     private static final Gson GSON = new GsonBuilder().create();
     public static final int MAX_INDEX = 1023;
 
     private final Map<String, Integer> indexMap;
+    private final Biome[] byIndex = new Biome[MAX_INDEX + 1];
+    private final int[] mapColors = new int[MAX_INDEX + 1];
     private int lastIndex = 0;
 
     public BiomeRegistry() {
@@ -87,11 +91,49 @@ public class BiomeRegistry extends Registry<@NotNull Biome> {
         return register(id, new Biome(getNextIndex(id), id, color, foliage, grass, water, grassModifier));
     }
 
+    @Override
+    public @NotNull Biome register(@NotNull String id, @NotNull Biome biome) {
+        super.register(id, biome);
+        if (biome.index() >= 0 && biome.index() <= MAX_INDEX) {
+            this.byIndex[biome.index()] = biome;
+            this.mapColors[biome.index()] = ColorsConfig.BIOME_COLORS.getOrDefault(id, 0);
+        }
+        return biome;
+    }
+
+    @Override
+    public @Nullable Biome unregister(@NotNull String id) {
+        Biome biome = super.unregister(id);
+        if (biome != null && biome.index() >= 0 && biome.index() <= MAX_INDEX && this.byIndex[biome.index()] == biome) {
+            this.byIndex[biome.index()] = null;
+        }
+        return biome;
+    }
+
     @Override
     public @NotNull Biome get(@NotNull String id) {
         return getOrDefault(id, Biome.DEFAULT);
     }
 
+    public @Nullable Biome get(int index) {
+        return index < 0 || index > MAX_INDEX ? null : this.byIndex[index];
+    }
+
+    /**
+     * Get the color a biome is drawn with on the biome map.
+     *
+     * @param biome Biome
+     * @return Biome map color
+     */
+    public int getMapColor(@NotNull Biome biome) {
+        int index = biome.index();
+        if (index >= 0 && index <= MAX_INDEX && this.byIndex[index] == biome) {
+            return this.mapColors[index];
+        }
+        // legacy and default biomes aren't registered
+        return ColorsConfig.BIOME_COLORS.getOrDefault(biome.getKey(), 0);
+    }
+
     public void saveToDisk(@NotNull World world) {
         Map<Integer, String> map = new HashMap<>();
         values().forEach(biome -> map.put(biome.index(), biome.getKey()));
@@ -23,6 +23,8 @@
  */
 package net.pl3x.map.core.registry;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.event.world.WorldUnloadedEvent;
@@ -31,6 +33,25 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class WorldRegistry extends Registry<@NotNull World> {
+    private final Map<@NotNull String, @NotNull World> byTilesDirectory = new ConcurrentHashMap<>();
+
+    @Override
+    public @NotNull World register(@NotNull String id, @NotNull World world) {
+        super.register(id, world);
+        this.byTilesDirectory.put(world.getTilesDirectory().getFileName().toString(), world);
+        return world;
+    }
+
+    /**
+     * Get a world by the name of its directory in the tiles directory.
+     *
+     * @param name Directory name
+     * @return World, or null if no world uses that directory
+     */
+    public @Nullable World getByTilesDirectory(@NotNull String name) {
+        return this.byTilesDirectory.get(name);
+    }
+
     public @NotNull World getOrDefault(@NotNull String id, @NotNull Supplier<@NotNull World> supplier) {
         World world = get(id);
         if (world == null) {
@@ -44,10 +65,13 @@ public class WorldRegistry extends Registry<@NotNull World> {
     public @Nullable World unregister(@NotNull String id) {
         World world = this.entries.remove(id);
         if (world != null) {
+            this.byTilesDirectory.remove(world.getTilesDirectory().getFileName().toString(), world);
             Pl3xMap.api().getEventRegistry().callEvent(new WorldUnloadedEvent(world));
             world.getMarkerTask().cancel();
-            //world.getRegionFileWatcher().stop();
+            world.getDirtyChunkTracker().cancel();
+            world.getRegionFileWatcher().stop();
             world.cleanup();
+            world.getRenderJournal().close();
         }
         return world;
     }
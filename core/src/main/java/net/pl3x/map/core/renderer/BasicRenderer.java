@@ -33,6 +33,11 @@ public final class BasicRenderer extends Renderer {
         super(task, builder);
     }
 
+    @Override
+    public boolean supportsPartial() {
+        return true;
+    }
+
     @Override
     public void scanBlock(@NotNull Region region, @NotNull Chunk chunk, Chunk.@NotNull BlockData data, int blockX, int blockZ) {
         int pixelColor = basicPixelColor(region, data, blockX, blockZ);
@@ -23,7 +23,6 @@
  */
 package net.pl3x.map.core.renderer;
 
-import net.pl3x.map.core.configuration.ColorsConfig;
 import net.pl3x.map.core.renderer.task.RegionScanTask;
 import net.pl3x.map.core.util.Colors;
 import net.pl3x.map.core.world.Biome;
@@ -36,6 +35,11 @@ public final class BiomeRenderer extends Renderer {
         super(task, builder);
     }
 
+    @Override
+    public boolean supportsPartial() {
+        return true;
+    }
+
     @Override
     public void scanBlock(@NotNull Region region, @NotNull Chunk chunk, Chunk.@NotNull BlockData data, int blockX, int blockZ) {
         int pixelColor = 0;
@@ -43,12 +47,12 @@ public final class BiomeRenderer extends Renderer {
         if (data.getBlockState().getBlock().color() > 0) {
             // determine the biome
             Biome biome = data.getBiome(region, blockX, blockZ);
-            int color = ColorsConfig.BIOME_COLORS.getOrDefault(biome.getKey(), 0);
+            int color = getWorld().getBiomeRegistry().getMapColor(biome);
             pixelColor = Colors.setAlpha(0xFF, color);
 
             // work out the heightmap
             if (data.getFluidState() == null) {
-                pixelColor = Colors.blend(getHeightmap().getColor(region, blockX, blockZ), pixelColor);
+                pixelColor = Colors.blend(getHeightmap().getColor(getRegionScanTask().getRenderContext(), blockX, blockZ), pixelColor);
             }
         }
 
@@ -25,13 +25,11 @@ package net.pl3x.map.core.renderer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import net.pl3x.map.core.image.TileImage;
+import net.pl3x.map.core.image.store.TileStore;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.renderer.task.RegionScanTask;
 import net.pl3x.map.core.util.ByteUtil;
@@ -44,7 +42,7 @@ import net.pl3x.map.core.world.Region;
 import org.jetbrains.annotations.NotNull;
 
 public class BlockInfoRenderer extends Renderer {
-    private static final Map<@NotNull Path, @NotNull ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>();
+    private static final Map<@NotNull String, @NotNull ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>();
 
     private ByteBuffer byteBuffer;
 
@@ -52,40 +50,44 @@ public class BlockInfoRenderer extends Renderer {
         super(task, builder);
     }
 
+    @Override
+    public boolean supportsPartial() {
+        return true;
+    }
+
     @Override
     public void allocateData(@NotNull Point region) {
         this.byteBuffer = ByteBuffer.allocate(512 * 512 * 4 + 12);
-        Path path = getWorld().getTilesDirectory()
-                .resolve(String.format(TileImage.DIR_PATH, 0, getKey()))
-                .resolve(String.format(TileImage.FILE_PATH, region.x(), region.z(), "pl3xmap.gz"));
+        String tile = TileStore.name(0, getKey(), region.x(), region.z(), "pl3xmap.gz");
         try {
-            if (Files.exists(path) && Files.size(path) > 0) {
-                FileUtil.readGzip(path, this.byteBuffer);
+            byte[] data = getWorld().getTileStore().read(tile);
+            if (data != null && data.length > 0) {
+                FileUtil.gunzip(data, this.byteBuffer);
             }
         } catch (IOException ignore) {
             // silently fail - we're clearing and rebuilding the entire byteBuffer anyway in scanData()
         }
     }
 
+    @Override
+    public boolean hasData(@NotNull Point region) {
+        return getWorld().getTileStore().exists(TileStore.name(0, getKey(), region.x(), region.z(), "pl3xmap.gz"));
+    }
+
     @Override
     public void saveData(@NotNull Point region) {
-        Path tilesDir = getWorld().getTilesDirectory();
+        TileStore store = getWorld().getTileStore();
         for (int zoom = 0; zoom <= getWorld().getConfig().ZOOM_MAX_OUT; zoom++) {
-            Path dirPath = tilesDir.resolve(String.format(TileImage.DIR_PATH, zoom, getKey()));
-
-            // create directories if they don't exist
-            FileUtil.createDirs(dirPath);
-
             // calculate correct sizes for this zoom level
             int step = Mathf.pow2(zoom);
             int size = 512 / step;
 
-            Path filePath = dirPath.resolve(String.format(TileImage.FILE_PATH,
+            String tile = TileStore.name(zoom, getKey(),
                     (int) Math.floor((double) region.x() / step),
                     (int) Math.floor((double) region.z() / step),
-                    "pl3xmap.gz"));
+                    "pl3xmap.gz");
 
-            ReadWriteLock lock = FILE_LOCKS.computeIfAbsent(filePath, k -> new ReentrantReadWriteLock(true));
+            ReadWriteLock lock = FILE_LOCKS.computeIfAbsent(tile, k -> new ReentrantReadWriteLock(true));
             lock.writeLock().lock();
 
             Throwable error = null;
@@ -93,17 +95,18 @@ public class BlockInfoRenderer extends Renderer {
             if (zoom == 0) {
                 // short circuit bottom zoom
                 try {
-                    FileUtil.saveGzip(this.byteBuffer.array(), filePath);
+                    store.write(tile, FileUtil.gzip(this.byteBuffer.array()));
                 } catch (IOException e) {
                     error = e;
                 }
             } else {
                 try {
-                    // read existing data from disk
+                    // read existing data from the store
                     ByteBuffer buffer = ByteBuffer.allocate(this.byteBuffer.capacity());
-                    if (Files.exists(filePath) && Files.size(filePath) > 0) {
+                    byte[] data = store.read(tile);
+                    if (data != null && data.length > 0) {
                         try {
-                            FileUtil.readGzip(filePath, buffer);
+                            FileUtil.gunzip(data, buffer);
                         } catch (Throwable ignore) {
                             // silently fail - the file's fucked anyway so whatever
                         }
@@ -126,8 +129,8 @@ public class BlockInfoRenderer extends Renderer {
                         }
                     }
 
-                    // finally, save data to disk
-                    FileUtil.saveGzip(buffer.array(), filePath);
+                    // finally, save data to the store
+                    store.write(tile, FileUtil.gzip(buffer.array()));
                 } catch (IOException e) {
                     error = e;
                 }
@@ -143,14 +146,12 @@ public class BlockInfoRenderer extends Renderer {
     }
 
     @Override
-    public void scanData(@NotNull Region region) {
+    public void preScanData(@NotNull Region region) {
         this.byteBuffer.clear();
 
         this.byteBuffer.put(0, ByteUtil.toBytes(0x706C3378)); // pl3x
         this.byteBuffer.put(4, ByteUtil.toBytes(0x6D617001)); // map1
         this.byteBuffer.put(8, ByteUtil.toBytes(getWorld().getMinBuildHeight()));
-
-        super.scanData(region);
     }
 
     @Override
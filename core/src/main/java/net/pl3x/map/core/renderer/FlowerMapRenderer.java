@@ -36,22 +36,35 @@ import net.pl3x.map.core.world.Region;
 import org.jetbrains.annotations.NotNull;
 
 public class FlowerMapRenderer extends Renderer {
-    private final Map<@NotNull Block, @NotNull Integer> colorMap = new HashMap<>();
+    // flower colors by block index, 0 for blocks that aren't on the flower map
+    private static final int[] COLORS;
+
+    static {
+        Map<@NotNull Block, @NotNull Integer> colorMap = new HashMap<>();
+        colorMap.put(Blocks.DANDELION, 0xFFFF00);
+        colorMap.put(Blocks.POPPY, 0xFF0000);
+        colorMap.put(Blocks.ALLIUM, 0x9900FF);
+        colorMap.put(Blocks.AZURE_BLUET, 0xFFFDDD);
+        colorMap.put(Blocks.RED_TULIP, 0xFF4D62);
+        colorMap.put(Blocks.ORANGE_TULIP, 0xFFB55A);
+        colorMap.put(Blocks.WHITE_TULIP, 0xDDFFFF);
+        colorMap.put(Blocks.PINK_TULIP, 0xF5B4FF);
+        colorMap.put(Blocks.OXEYE_DAISY, 0xFFEEDD);
+        colorMap.put(Blocks.CORNFLOWER, 0x4100FF);
+        colorMap.put(Blocks.LILY_OF_THE_VALLEY, 0xFFFFFF);
+        colorMap.put(Blocks.BLUE_ORCHID, 0x00BFFF);
+
+        COLORS = new int[colorMap.keySet().stream().mapToInt(Block::getIndex).max().orElse(-1) + 1];
+        colorMap.forEach((block, color) -> COLORS[block.getIndex()] = 0xFF << 24 | color);
+    }
 
     public FlowerMapRenderer(@NotNull RegionScanTask task, @NotNull Builder builder) {
         super(task, builder);
-        this.colorMap.put(Blocks.DANDELION, 0xFFFF00);
-        this.colorMap.put(Blocks.POPPY, 0xFF0000);
-        this.colorMap.put(Blocks.ALLIUM, 0x9900FF);
-        this.colorMap.put(Blocks.AZURE_BLUET, 0xFFFDDD);
-        this.colorMap.put(Blocks.RED_TULIP, 0xFF4D62);
-        this.colorMap.put(Blocks.ORANGE_TULIP, 0xFFB55A);
-        this.colorMap.put(Blocks.WHITE_TULIP, 0xDDFFFF);
-        this.colorMap.put(Blocks.PINK_TULIP, 0xF5B4FF);
-        this.colorMap.put(Blocks.OXEYE_DAISY, 0xFFEEDD);
-        this.colorMap.put(Blocks.CORNFLOWER, 0x4100FF);
-        this.colorMap.put(Blocks.LILY_OF_THE_VALLEY, 0xFFFFFF);
-        this.colorMap.put(Blocks.BLUE_ORCHID, 0x00BFFF);
+    }
+
+    @Override
+    public boolean supportsPartial() {
+        return true;
     }
 
     @Override
@@ -62,11 +75,13 @@ public class FlowerMapRenderer extends Renderer {
 
         Block flower = Pl3xMap.api().getFlower(region.getWorld(), biome, blockX, data.getBlockY(), blockZ);
         if (flower != null) {
-            pixelColor = (0xFF << 24) | (this.colorMap.getOrDefault(flower, pixelColor) & 0xFFFFFF);
+            int index = flower.getIndex();
+            int color = index >= 0 && index < COLORS.length ? COLORS[index] : 0;
+            pixelColor = color != 0 ? color : (0xFF << 24) | pixelColor;
         }
 
         // work out the heightmap
-        pixelColor = Colors.blend(getHeightmap().getColor(region, blockX, blockZ), pixelColor);
+        pixelColor = Colors.blend(getHeightmap().getColor(getRegionScanTask().getRenderContext(), blockX, blockZ), pixelColor);
 
         // fluid stuff
         pixelColor = processFluids(getWorld().getConfig().RENDER_TRANSLUCENT_FLUIDS, region, biome, data, blockX, blockZ, pixelColor);
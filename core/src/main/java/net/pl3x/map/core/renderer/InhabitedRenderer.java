@@ -26,22 +26,30 @@ package net.pl3x.map.core.renderer;
 import net.pl3x.map.core.registry.RendererRegistry;
 import net.pl3x.map.core.renderer.task.RegionScanTask;
 import net.pl3x.map.core.util.Colors;
+import net.pl3x.map.core.util.HSBGradient;
 import net.pl3x.map.core.util.Mathf;
 import net.pl3x.map.core.world.Chunk;
 import net.pl3x.map.core.world.Region;
 import org.jetbrains.annotations.NotNull;
 
 public final class InhabitedRenderer extends Renderer {
+    private static final HSBGradient GRADIENT = new HSBGradient(0x880000FF, 0x88FF0000, 1024, false);
+
     private Renderer basic;
 
     public InhabitedRenderer(@NotNull RegionScanTask task, @NotNull Builder builder) {
         super(task, builder);
     }
 
-    public void scanData(@NotNull Region region) {
+    @Override
+    public boolean supportsPartial() {
+        return true;
+    }
+
+    @Override
+    public void preScanData(@NotNull Region region) {
         // get the basic renderer so we can copy its tiles
         this.basic = getRegionScanTask().getRenderer(RendererRegistry.BASIC);
-        super.scanData(region);
     }
 
     @Override
@@ -59,7 +67,7 @@ public final class InhabitedRenderer extends Renderer {
         // we hsb lerp between blue and red with ratio being the
         // percent inhabited time is of the maxed out inhabited time
         float ratio = Mathf.clamp(0F, 1F, chunk.getInhabitedTime() / 3600000F);
-        int inhabitedRGB = Colors.lerpHSB(0x880000FF, 0x88FF0000, ratio, false);
+        int inhabitedRGB = GRADIENT.get(ratio);
 
         // set the color, mixing our heatmap on top
         // set a low enough alpha, so we can see the basic map underneath
@@ -36,10 +36,15 @@ public final class NightRenderer extends Renderer {
         super(task, builder);
     }
 
-    public void scanData(@NotNull Region region) {
+    @Override
+    public boolean supportsPartial() {
+        return true;
+    }
+
+    @Override
+    public void preScanData(@NotNull Region region) {
         // get the basic renderer so we can copy its tiles
         this.basic = getRegionScanTask().getRenderer(RendererRegistry.BASIC);
-        super.scanData(region);
     }
 
     @Override
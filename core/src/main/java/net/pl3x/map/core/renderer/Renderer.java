@@ -23,13 +23,18 @@
  */
 package net.pl3x.map.core.renderer;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import net.pl3x.map.core.Keyed;
 import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.image.TileImage;
+import net.pl3x.map.core.image.io.IO;
+import net.pl3x.map.core.image.store.TileStore;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.renderer.heightmap.Heightmap;
+import net.pl3x.map.core.renderer.task.RegionProcessor;
 import net.pl3x.map.core.renderer.task.RegionScanTask;
 import net.pl3x.map.core.util.Colors;
 import net.pl3x.map.core.util.Mathf;
@@ -38,11 +43,34 @@ import net.pl3x.map.core.world.BlockState;
 import net.pl3x.map.core.world.Blocks;
 import net.pl3x.map.core.world.Chunk;
 import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.RegionChanges;
+import net.pl3x.map.core.world.VisibilityMask;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public abstract class Renderer extends Keyed {
+    private static final int FLUID_STEPS = 64;
+    private static final int[] WATER_DARKEN = new int[FLUID_STEPS];
+    private static final int[] WATER_ALPHA = new int[FLUID_STEPS];
+    private static final int[] LAVA_DARKEN = new int[FLUID_STEPS];
+    private static final int[] LIGHT_DARKNESS = new int[16];
+
+    static {
+        // one step per block of fluid depth, the curves have flattened out long before the last step
+        for (int i = 0; i < FLUID_STEPS; i++) {
+            float depth = i * 0.025F;
+            WATER_DARKEN[i] = Math.round(Mathf.clamp(0, 0.45F, Easing.cubicOut(depth / 1.5F)) * 256);
+            WATER_ALPHA[i] = (int) (Easing.quinticOut(Mathf.clamp(0, 1, depth * 5F)) * 0xFF);
+            LAVA_DARKEN[i] = Math.round(Mathf.clamp(0, 0.3F, Easing.cubicOut(depth / 1.5F)) * 256);
+        }
+        for (int light = 0; light < LIGHT_DARKNESS.length; light++) {
+            // blocklight in 0-255 range (minus 0x33 for max darkness cap)
+            int alpha = (int) (0xCC * Mathf.inverseLerp(4, 15, light));
+            LIGHT_DARKNESS[light] = Mathf.clamp(0, 0xCC, 0xCC - alpha);
+        }
+    }
+
     private final RegionScanTask task;
     private final String name;
     private final World world;
@@ -82,13 +110,101 @@ public abstract class Renderer extends Keyed {
 
     public void allocateData(@NotNull Point region) {
         this.tileImage = new TileImage(getKey(), getWorld(), region);
+        this.tileImage.setPartial(!getRegionScanTask().getChanges().isFull());
+    }
+
+    /**
+     * Check if this renderer already has a tile for a region that changed chunks can be patched into.
+     *
+     * @param region Region to check
+     * @return True if the region's tile exists
+     */
+    public boolean hasData(@NotNull Point region) {
+        String ext = IO.get(Config.WEB_TILE_FORMAT).getKey();
+        return getWorld().getTileStore().exists(TileStore.name(0, getKey(), region.x(), region.z(), ext));
     }
 
     public void saveData(@NotNull Point region) {
         this.tileImage.saveToDisk();
     }
 
+    /**
+     * Called once before the region is traversed.
+     *
+     * @param region Region about to be scanned
+     */
+    public void preScanData(@NotNull Region region) {
+    }
+
+    /**
+     * Called once after every column of the region has been passed to {@link #scanBlock(Region, Chunk, Chunk.BlockData, int, int)}.
+     * <p>
+     * Renderers that need the whole region at once (blurs, etc.) do that work here.
+     *
+     * @param region Region that was scanned
+     */
+    public void postScanData(@NotNull Region region) {
+    }
+
+    /**
+     * Whether this renderer is fed from the shared region traversal.
+     * <p>
+     * Renderers that need to walk the region on their own return false and override {@link #scanData(Region)}.
+     *
+     * @return True if columns are fed from the shared traversal
+     */
+    public boolean isFused() {
+        return true;
+    }
+
+    /**
+     * Whether this renderer can redraw just the changed chunks of a region.
+     * <p>
+     * Only the changed columns and a small border around them are passed to
+     * {@link #scanBlock(Region, Chunk, Chunk.BlockData, int, int)}, and everything it
+     * doesn't draw keeps what the existing tile has.
+     *
+     * @return True if partial renders are supported
+     */
+    public boolean supportsPartial() {
+        return false;
+    }
+
+    /**
+     * Blocks around the redrawn area that this renderer needs scanned for its post processing.
+     *
+     * @return Extra blocks to scan
+     */
+    public int getPartialMargin() {
+        return 0;
+    }
+
     public void scanData(@NotNull Region region) {
+        scanData(region, List.of(this));
+    }
+
+    /**
+     * Walk the region once, handing every visible column to each of the given renderers in order.
+     *
+     * @param region    Region to scan
+     * @param renderers Renderers to feed
+     */
+    public static void scanData(@NotNull Region region, @NotNull List<@NotNull Renderer> renderers) {
+        if (renderers.isEmpty()) {
+            return;
+        }
+
+        World world = region.getWorld();
+
+        for (Renderer renderer : renderers) {
+            renderer.preScanData(region);
+        }
+
+        VisibilityMask.RegionMask mask = world.getVisibilityMask().getRegion(region.getX(), region.getZ());
+        RegionChanges changes = renderers.get(0).getRegionScanTask().getRenderContext().getChanges();
+        boolean patch = !changes.isFull();
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+
         int cX = region.getX() << 5;
         int cZ = region.getZ() << 5;
 
@@ -97,17 +213,26 @@ public abstract class Renderer extends Keyed {
             int bX = chunkX << 4;
             for (int chunkZ = cZ; chunkZ < cZ + 32; chunkZ++) {
                 // skip any blocks that do not need to be rendered due to visibility limits
-                if (!getWorld().visibleChunk(chunkX, chunkZ)) {
+                byte visibility = mask.getChunk(chunkX, chunkZ);
+                if (visibility == VisibilityMask.OUTSIDE) {
                     continue;
                 }
+                // skip any chunks that are not near a change
+                if (patch && !changes.needsChunk(region.getX(), region.getZ(), chunkX, chunkZ)) {
+                    continue;
+                }
+                boolean partial = visibility == VisibilityMask.PARTIAL;
+                processor.checkPaused();
                 int bZ = chunkZ << 4;
                 Chunk chunk = region.getChunk(chunkX, chunkZ);
                 // iterate each block in this chunk
                 for (int blockX = bX; blockX < bX + 16; blockX++) {
                     for (int blockZ = bZ; blockZ < bZ + 16; blockZ++) {
-                        Pl3xMap.api().getRegionProcessor().checkPaused();
                         // skip any blocks that do not need to be rendered due to visibility limits
-                        if (!getWorld().visibleBlock(blockX, blockZ)) {
+                        if (partial && !mask.containsBlock(blockX, blockZ)) {
+                            continue;
+                        }
+                        if (patch && !changes.scansBlock(blockX, blockZ)) {
                             continue;
                         }
                         Chunk.BlockData data = chunk.getData(blockX, blockZ);
@@ -115,11 +240,17 @@ public abstract class Renderer extends Keyed {
                             // this shouldn't happen, but just in case...
                             continue;
                         }
-                        scanBlock(region, chunk, data, blockX, blockZ);
+                        for (Renderer renderer : renderers) {
+                            renderer.scanBlock(region, chunk, data, blockX, blockZ);
+                        }
                     }
                 }
             }
         }
+
+        for (Renderer renderer : renderers) {
+            renderer.postScanData(region);
+        }
     }
 
     public abstract void scanBlock(@NotNull Region region, @NotNull Chunk chunk, Chunk.@NotNull BlockData data, int blockX, int blockZ);
@@ -132,12 +263,12 @@ public abstract class Renderer extends Keyed {
         int pixelColor = 0;
         if (data.getFluidState() == null || region.getWorld().getConfig().RENDER_TRANSLUCENT_FLUIDS) {
             // not flat fluids, we need to draw land
-            pixelColor = Colors.fixBlockColor(region, biome, data.getBlockState(), blockX, blockZ);
+            pixelColor = Colors.fixBlockColor(getRegionScanTask().getRenderContext().getBiomeGrid(), biome, data.getBlockState(), blockX, blockZ);
             if (pixelColor != 0) {
                 // fix alpha
                 pixelColor = Colors.setAlpha(0xFF, pixelColor);
                 // work out the heightmap
-                pixelColor = Colors.blend(getHeightmap().getColor(region, blockX, blockZ), pixelColor);
+                pixelColor = Colors.blend(getHeightmap().getColor(getRegionScanTask().getRenderContext(), blockX, blockZ), pixelColor);
             }
         }
 
@@ -145,8 +276,8 @@ public abstract class Renderer extends Keyed {
         pixelColor = processFluids(region.getWorld().getConfig().RENDER_TRANSLUCENT_FLUIDS, region, biome, data, blockX, blockZ, pixelColor);
 
         // if there was translucent glass, mix it in here
-        for (int color : data.getGlassColors()) {
-            pixelColor = Colors.blend(color, pixelColor);
+        for (int i = 0, count = data.getGlassCount(); i < count; i++) {
+            pixelColor = Colors.blend(data.getGlassColor(i), pixelColor);
         }
 
         return pixelColor;
@@ -163,7 +294,7 @@ public abstract class Renderer extends Keyed {
             double diffY = fluidDepth * 0.1D + (blockX + blockZ & 1) * 0.2D;
             return Colors.shade(
                     data.getFluidState().getBlock().isWater() ?
-                            Colors.getWaterColor(region, biome, blockX, blockZ) :
+                            getRegionScanTask().getRenderContext().getBiomeGrid().getWater(biome, blockX, blockZ) :
                             Blocks.LAVA.color(),
                     diffY < 0.5D ? 0xFF : (diffY > 0.9D ? 0xB4 : 0xDC)
             );
@@ -173,14 +304,16 @@ public abstract class Renderer extends Keyed {
 
     public int fancyFluids(@NotNull Region region, @NotNull Biome biome, @NotNull BlockState fluidstate, int blockX, int blockZ, float depth) {
         // let's do some maths to get pretty fluid colors based on depth
+        // the maths is done up front, depths come in steps of one block
+        int step = Mathf.clamp(0, FLUID_STEPS - 1, Math.round(depth * 40F));
         int color;
         if (fluidstate.getBlock().isWater()) {
-            color = Colors.getWaterColor(region, biome, blockX, blockZ);
-            color = Colors.lerpARGB(color, 0xFF000000, Mathf.clamp(0, 0.45F, Easing.cubicOut(depth / 1.5F)));
-            color = Colors.setAlpha((int) (Easing.quinticOut(Mathf.clamp(0, 1, depth * 5F)) * 0xFF), color);
+            color = getRegionScanTask().getRenderContext().getBiomeGrid().getWater(biome, blockX, blockZ);
+            color = Colors.lerpARGBFixed(color, 0xFF000000, WATER_DARKEN[step]);
+            color = Colors.setAlpha(WATER_ALPHA[step], color);
         } else {
             // lava
-            color = Colors.lerpARGB(fluidstate.getBlock().color(), 0xFF000000, Mathf.clamp(0, 0.3F, Easing.cubicOut(depth / 1.5F)));
+            color = Colors.lerpARGBFixed(fluidstate.getBlock().color(), 0xFF000000, LAVA_DARKEN[step]);
             color = Colors.setAlpha(0xFF, color);
         }
         return color;
@@ -196,10 +329,8 @@ public abstract class Renderer extends Keyed {
         } else {
             blockLight = chunk.getLight(blockX, (fluidState == null ? blockY : fluidY) + 1, blockZ);
         }
-        // blocklight in 0-255 range (minus 0x33 for max darkness cap)
-        int alpha = (int) (0xCC * Mathf.inverseLerp(4, 15, blockLight));
         // how much darkness to draw in 0-255 range (minus 0x33 for max darkness cap)
-        int darkness = Mathf.clamp(0, 0xCC, 0xCC - alpha);
+        int darkness = LIGHT_DARKNESS[Mathf.clamp(0, 15, blockLight)];
         // mix it into the pixel
         return Colors.blend(darkness << 24, pixelColor);
     }
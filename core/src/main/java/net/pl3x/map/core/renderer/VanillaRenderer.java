@@ -25,12 +25,14 @@ package net.pl3x.map.core.renderer;
 
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.renderer.heightmap.Heightmap;
+import net.pl3x.map.core.renderer.task.RegionProcessor;
 import net.pl3x.map.core.renderer.task.RegionScanTask;
 import net.pl3x.map.core.util.Colors;
 import net.pl3x.map.core.world.BlockState;
 import net.pl3x.map.core.world.Chunk;
 import net.pl3x.map.core.world.EmptyChunk;
 import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.VisibilityMask;
 import org.jetbrains.annotations.NotNull;
 
 public class VanillaRenderer extends Renderer {
@@ -46,23 +48,32 @@ public class VanillaRenderer extends Renderer {
         return this.heightmap;
     }
 
+    @Override
+    public boolean isFused() {
+        // we do our own surface search, looking one row behind the region
+        return false;
+    }
+
     @Override
     public void scanData(@NotNull Region region) {
         int startX = region.getX() << 9;
         int startZ = region.getZ() << 9;
 
+        VisibilityMask.RegionMask mask = getWorld().getVisibilityMask().getRegion(region.getX(), region.getZ());
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+
         for (int pixelX = 0; pixelX < 512; pixelX++) {
+            processor.checkPaused();
             int blockX = startX + pixelX;
             double lastBlockY = 0.0D;
             for (int pixelZ = -1; pixelZ < 512; pixelZ++) {
                 int blockZ = startZ + pixelZ;
 
-                if (!getWorld().visibleBlock(blockX, blockZ)) {
+                // the row behind the region belongs to the neighbor's mask
+                if (pixelZ < 0 ? !getWorld().visibleBlock(blockX, blockZ) : !mask.containsBlock(blockX, blockZ)) {
                     continue;
                 }
 
-                Pl3xMap.api().getRegionProcessor().checkPaused();
-
                 Chunk chunk = region.getWorld().getChunk(region, blockX >> 4, blockZ >> 4);
                 if (chunk instanceof EmptyChunk) {
                     continue;
@@ -23,8 +23,8 @@
  */
 package net.pl3x.map.core.renderer.heightmap;
 
+import net.pl3x.map.core.renderer.task.RegionRenderContext;
 import net.pl3x.map.core.world.Chunk;
-import net.pl3x.map.core.world.Region;
 import org.jetbrains.annotations.NotNull;
 
 public class EvenOddHeightmap extends Heightmap {
@@ -33,10 +33,10 @@ public class EvenOddHeightmap extends Heightmap {
     }
 
     @Override
-    public int getColor(@NotNull Region region, int blockX, int blockZ) {
-        Chunk.BlockData origin = region.getWorld().getChunk(region, blockX >> 4, blockZ >> 4).getData(blockX, blockZ);
+    public int getColor(@NotNull RegionRenderContext context, int blockX, int blockZ) {
+        int y = context.getHeight(blockX, blockZ);
         int heightColor = 0x22;
-        if (origin != null && origin.getBlockY() % 2 == 1) {
+        if (y != Chunk.NO_HEIGHT && y % 2 == 1) {
             heightColor = 0x33;
         }
         return heightColor << 24;
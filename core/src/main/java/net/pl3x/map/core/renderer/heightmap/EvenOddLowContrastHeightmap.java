@@ -23,8 +23,8 @@
  */
 package net.pl3x.map.core.renderer.heightmap;
 
+import net.pl3x.map.core.renderer.task.RegionRenderContext;
 import net.pl3x.map.core.world.Chunk;
-import net.pl3x.map.core.world.Region;
 import org.jetbrains.annotations.NotNull;
 
 public class EvenOddLowContrastHeightmap extends Heightmap {
@@ -34,18 +34,17 @@ public class EvenOddLowContrastHeightmap extends Heightmap {
 
     @Override
     @SuppressWarnings("DuplicatedCode")
-    public int getColor(@NotNull Region region, int blockX, int blockZ) {
-        Chunk.BlockData origin = region.getWorld().getChunk(region, blockX >> 4, blockZ >> 4).getData(blockX, blockZ);
-        Chunk.BlockData west = region.getWorld().getChunk(region, (blockX - 1) >> 4, blockZ >> 4).getData(blockX - 1, blockZ);
-        Chunk.BlockData north = region.getWorld().getChunk(region, blockX >> 4, (blockZ - 1) >> 4).getData(blockX, blockZ - 1);
+    public int getColor(@NotNull RegionRenderContext context, int blockX, int blockZ) {
+        int y = context.getHeight(blockX, blockZ);
+        int west = context.getHeight(blockX - 1, blockZ);
+        int north = context.getHeight(blockX, blockZ - 1);
         int heightColor = 0x22;
-        if (origin != null) {
-            int y = origin.getBlockY();
-            if (west != null) {
-                heightColor = getColor(y, west.getBlockY(), heightColor, 0x11);
+        if (y != Chunk.NO_HEIGHT) {
+            if (west != Chunk.NO_HEIGHT) {
+                heightColor = getColor(y, west, heightColor, 0x11);
             }
-            if (north != null) {
-                heightColor = getColor(y, north.getBlockY(), heightColor, 0x11);
+            if (north != Chunk.NO_HEIGHT) {
+                heightColor = getColor(y, north, heightColor, 0x11);
             }
             if (y % 2 == 1) {
                 heightColor += 0x06;
@@ -26,8 +26,10 @@ package net.pl3x.map.core.renderer.heightmap;
 import java.util.Arrays;
 import java.util.Objects;
 import net.pl3x.map.core.Keyed;
+import net.pl3x.map.core.renderer.task.RegionRenderContext;
 import net.pl3x.map.core.util.Mathf;
 import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.RegionChanges;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -39,7 +41,51 @@ public abstract class Heightmap extends Keyed {
         super(name);
     }
 
-    public abstract int getColor(@NotNull Region region, int blockX, int blockZ);
+    // for callers still on the region overload, reuse the context while they stay in one region
+    private static final ThreadLocal<RegionRenderContext> REGION_CONTEXT = new ThreadLocal<>();
+
+    /**
+     * Let go of the context kept for callers of {@link #getColor(Region, int, int)} on this thread.
+     * <p>
+     * Called when a region scan finishes, so the region and its heights don't outlive it.
+     */
+    public static void releaseRegionContext() {
+        REGION_CONTEXT.remove();
+    }
+
+    /**
+     * Get the heightmap color of a block.
+     * <p>
+     * Subclasses have to override either this or {@link #getColor(Region, int, int)}, the two
+     * call each other by default and a subclass overriding neither recurses until the stack overflows.
+     *
+     * @param context Render context of the region being rendered
+     * @param blockX  Block X coordinate
+     * @param blockZ  Block Z coordinate
+     * @return Heightmap color
+     */
+    public int getColor(@NotNull RegionRenderContext context, int blockX, int blockZ) {
+        return getColor(context.getRegion(), blockX, blockZ);
+    }
+
+    /**
+     * Get the heightmap color of a block.
+     *
+     * @param region Region being rendered
+     * @param blockX Block X coordinate
+     * @param blockZ Block Z coordinate
+     * @return Heightmap color
+     * @deprecated Override {@link #getColor(RegionRenderContext, int, int)} instead, it reads neighbor heights from a grid
+     */
+    @Deprecated
+    public int getColor(@NotNull Region region, int blockX, int blockZ) {
+        RegionRenderContext context = REGION_CONTEXT.get();
+        if (context == null || context.getRegion() != region) {
+            context = new RegionRenderContext(region, RegionChanges.FULL);
+            REGION_CONTEXT.set(context);
+        }
+        return getColor(context, blockX, blockZ);
+    }
 
     public int getMin() {
         return 0x00;
@@ -23,7 +23,7 @@
  */
 package net.pl3x.map.core.renderer.heightmap;
 
-import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.renderer.task.RegionRenderContext;
 import org.jetbrains.annotations.NotNull;
 
 public class NoneHeightmap extends Heightmap {
@@ -32,7 +32,7 @@ public class NoneHeightmap extends Heightmap {
     }
 
     @Override
-    public int getColor(@NotNull Region region, int blockX, int blockZ) {
+    public int getColor(@NotNull RegionRenderContext context, int blockX, int blockZ) {
         return 0x22 << 24;
     }
 }
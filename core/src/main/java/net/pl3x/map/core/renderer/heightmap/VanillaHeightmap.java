@@ -23,8 +23,8 @@
  */
 package net.pl3x.map.core.renderer.heightmap;
 
+import net.pl3x.map.core.renderer.task.RegionRenderContext;
 import net.pl3x.map.core.world.Chunk;
-import net.pl3x.map.core.world.Region;
 import org.jetbrains.annotations.NotNull;
 
 public class VanillaHeightmap extends Heightmap {
@@ -34,12 +34,12 @@ public class VanillaHeightmap extends Heightmap {
 
     @Override
     @SuppressWarnings("DuplicatedCode")
-    public int getColor(@NotNull Region region, int blockX, int blockZ) {
-        Chunk.BlockData origin = region.getWorld().getChunk(region, blockX >> 4, blockZ >> 4).getData(blockX, blockZ);
-        Chunk.BlockData north = region.getWorld().getChunk(region, blockX >> 4, (blockZ - 1) >> 4).getData(blockX, blockZ - 1);
+    public int getColor(@NotNull RegionRenderContext context, int blockX, int blockZ) {
+        int y = context.getHeight(blockX, blockZ);
+        int north = context.getHeight(blockX, blockZ - 1);
         int heightColor = 0x22;
-        if (origin != null && north != null) {
-            heightColor = getColor(origin.getBlockY(), north.getBlockY(), heightColor, 0x22);
+        if (y != Chunk.NO_HEIGHT && north != Chunk.NO_HEIGHT) {
+            heightColor = getColor(y, north, heightColor, 0x22);
         }
         return heightColor << 24;
     }
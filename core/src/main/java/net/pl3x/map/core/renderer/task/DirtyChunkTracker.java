@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.scheduler.Task;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.RegionFile;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Chunks the server told us were changed, waiting for the server to save them.
+ * <p>
+ * Platforms mark chunks from their block change hooks. Marking is cheap enough to do from
+ * the server thread on every change. Every few seconds the region file headers of the marked
+ * chunks are read, and the regions of any chunks saved since they were marked get rendered.
+ */
+public class DirtyChunkTracker extends Task {
+    private final World world;
+    private final Map<@NotNull Long, @NotNull Long> chunks = new ConcurrentHashMap<>(); // <chunk pos, first marked>
+    private final ExecutorService executor;
+
+    private CompletableFuture<Void> future;
+    private boolean running;
+
+    public DirtyChunkTracker(@NotNull World world) {
+        super(Math.max(1, Config.LIVE_UPDATES_INTERVAL), true);
+        this.world = world;
+        this.executor = Pl3xMap.ThreadFactory.createService("Pl3xMap-DirtyChunks");
+    }
+
+    /**
+     * Mark a chunk as changed.
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     */
+    public void mark(int chunkX, int chunkZ) {
+        if (!Config.LIVE_UPDATES_ENABLED) {
+            return;
+        }
+        long pos = Mathf.asLong(chunkX, chunkZ);
+        // most changes land in chunks that are already marked, don't even try to write for those
+        if (!this.chunks.containsKey(pos)) {
+            this.chunks.putIfAbsent(pos, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Get how many changed chunks are waiting to be saved.
+     *
+     * @return Waiting chunk count
+     */
+    public int size() {
+        return this.chunks.size();
+    }
+
+    @Override
+    public void run() {
+        if (this.running || this.chunks.isEmpty()) {
+            return;
+        }
+        this.running = true;
+        this.future = CompletableFuture.runAsync(() -> {
+            try {
+                flush();
+            } catch (Throwable t) {
+                Logger.severe("Failed to flush changed chunks for world %s".formatted(this.world.getName()), t);
+            }
+            this.running = false;
+        }, this.executor);
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        if (this.future != null) {
+            this.future.cancel(true);
+        }
+        this.chunks.clear();
+    }
+
+    private void flush() {
+        Map<Long, Map<Long, Long>> regions = new HashMap<>();
+        this.chunks.forEach((pos, marked) -> {
+            long region = Mathf.asLong(Mathf.longToX(pos) >> 5, Mathf.longToZ(pos) >> 5);
+            regions.computeIfAbsent(region, k -> new HashMap<>()).put(pos, marked);
+        });
+
+        long now = System.currentTimeMillis();
+        long expire = Config.LIVE_UPDATES_EXPIRE * 1000L;
+        List<Point> saved = new ArrayList<>();
+
+        regions.forEach((region, chunks) -> {
+            int regionX = Mathf.longToX(region);
+            int regionZ = Mathf.longToZ(region);
+            if (!this.world.visibleRegion(regionX, regionZ)) {
+                chunks.forEach(this.chunks::remove);
+                return;
+            }
+
+            int[] timestamps;
+            try {
+                timestamps = RegionFile.readTimestamps(this.world.getMCAFile(regionX, regionZ));
+            } catch (IOException e) {
+                timestamps = null;
+            }
+
+            boolean changed = false;
+            for (Map.Entry<Long, Long> entry : chunks.entrySet()) {
+                long pos = entry.getKey();
+                long marked = entry.getValue();
+                int index = (Mathf.longToX(pos) & 0x1F) + ((Mathf.longToZ(pos) & 0x1F) << 5);
+                // timestamps only have second precision
+                if (timestamps != null && timestamps[index] * 1000L >= marked - 1000L) {
+                    this.chunks.remove(pos, marked);
+                    changed = true;
+                } else if (now - marked > expire) {
+                    // never saved, or the change didn't stick. the region file check has our back
+                    this.chunks.remove(pos, marked);
+                }
+            }
+
+            if (changed) {
+                this.world.getRegionDemand().touch(regionX, regionZ, RegionDemand.ACTIVITY);
+                saved.add(Point.of(regionX, regionZ));
+            }
+        });
+
+        if (!saved.isEmpty()) {
+            Logger.debug("[" + this.world.getName() + "] Found " + saved.size() + " regions with saved changed chunks");
+            Pl3xMap.api().getRegionProcessor().addRegions(this.world, saved);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets render threads wait while rendering is paused.
+ * <p>
+ * Checking the gate while it is open costs a single volatile read. Threads that hit a closed gate
+ * park until it is opened again, and leave with a {@link CancellationException} once it is stopped.
+ */
+public class PauseGate {
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean paused;
+    private volatile boolean stopped;
+
+    public boolean isPaused() {
+        return this.paused;
+    }
+
+    public boolean isStopped() {
+        return this.stopped;
+    }
+
+    public void pause() {
+        this.paused = true;
+    }
+
+    public void resume() {
+        this.paused = false;
+        wakeAll();
+    }
+
+    /**
+     * Send every waiting and future thread away, until {@link #reset()} is called.
+     */
+    public void stop() {
+        this.stopped = true;
+        wakeAll();
+    }
+
+    public void reset() {
+        this.stopped = false;
+    }
+
+    /**
+     * Wait here while paused.
+     *
+     * @throws CancellationException if the gate is stopped, or the thread is interrupted while waiting
+     */
+    public void await() {
+        if (!this.paused && !this.stopped) {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        // queue up before checking again, so a resume in between still wakes us
+        this.waiters.add(thread);
+        try {
+            while (this.paused && !this.stopped) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    thread.interrupt();
+                    throw new CancellationException("Interrupted while paused");
+                }
+            }
+        } finally {
+            this.waiters.remove(thread);
+        }
+        if (this.stopped) {
+            throw new CancellationException("Rendering stopped");
+        }
+    }
+
+    private void wakeAll() {
+        for (Thread thread : this.waiters) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.player.Player;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How much the regions of a world are wanted right now.
+ * <p>
+ * Regions heat up when players are near them, when their region files change and when map
+ * viewers look at their tiles. Heat halves every half-life, so regions nobody cares about
+ * anymore cool back down to the background order.
+ */
+public class RegionDemand {
+    public static final double PLAYER = 1.0D;
+    public static final double ACTIVITY = 2.0D;
+    public static final double VIEWER = 0.5D;
+
+    // anything cooler than this renders in the background order
+    private static final double HOT = 0.25D;
+    private static final long PLAYER_SAMPLE_INTERVAL = 5000L;
+    // viewers can ask for any tile, so don't let them grow the map without bound
+    private static final int MAX_REGIONS = 4096;
+
+    private final World world;
+    private final Map<@NotNull Long, @NotNull Heat> heat = new ConcurrentHashMap<>();
+
+    private volatile long lastPlayerSample;
+
+    public RegionDemand(@NotNull World world) {
+        this.world = world;
+    }
+
+    /**
+     * Heat up a region.
+     *
+     * @param regionX Region X coordinate
+     * @param regionZ Region Z coordinate
+     * @param weight  How much heat to add
+     */
+    public void touch(int regionX, int regionZ, double weight) {
+        long now = System.currentTimeMillis();
+        long pos = Mathf.asLong(regionX, regionZ);
+        if (this.heat.size() >= MAX_REGIONS && !this.heat.containsKey(pos)) {
+            prune(now);
+            if (this.heat.size() >= MAX_REGIONS) {
+                return;
+            }
+        }
+        this.heat.merge(pos, new Heat(weight, now),
+                (old, add) -> new Heat(old.at(now) + add.value(), now));
+    }
+
+    /**
+     * Heat up the regions under a requested tile.
+     *
+     * @param zoom  Zoom level of the tile
+     * @param tileX Tile X coordinate
+     * @param tileZ Tile Z coordinate
+     */
+    public void touchTile(int zoom, int tileX, int tileZ) {
+        if (zoom < 0 || zoom > 3) {
+            // far out tiles cover too many regions to mean much
+            return;
+        }
+        int size = 1 << zoom;
+        double weight = VIEWER / (size * size);
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                int regionX = (tileX << zoom) + x;
+                int regionZ = (tileZ << zoom) + z;
+                // only regions that can actually render are worth heating up
+                if (this.world.visibleRegion(regionX, regionZ) && Files.exists(this.world.getMCAFile(regionX, regionZ))) {
+                    touch(regionX, regionZ, weight);
+                }
+            }
+        }
+    }
+
+    public boolean isHot(@NotNull Point region) {
+        Heat heat = this.heat.get(Mathf.asLong(region));
+        return heat != null && heat.at(System.currentTimeMillis()) >= HOT;
+    }
+
+    /**
+     * Get the hottest region that is still waiting to render.
+     *
+     * @param pending Regions waiting to render
+     * @return Hottest waiting region as a packed long, or {@link Long#MIN_VALUE} if none of them are hot
+     */
+    public long hottest(@NotNull Set<@NotNull Long> pending) {
+        samplePlayers();
+        long now = System.currentTimeMillis();
+        long best = Long.MIN_VALUE;
+        double bestHeat = HOT;
+        prune(now);
+        for (Map.Entry<Long, Heat> entry : this.heat.entrySet()) {
+            double value = entry.getValue().at(now);
+            if (value >= bestHeat && pending.contains(entry.getKey())) {
+                best = entry.getKey();
+                bestHeat = value;
+            }
+        }
+        return best;
+    }
+
+    private void prune(long now) {
+        for (Map.Entry<Long, Heat> entry : this.heat.entrySet()) {
+            if (entry.getValue().at(now) < HOT / 8) {
+                // cooled off, forget about it
+                this.heat.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void samplePlayers() {
+        long now = System.currentTimeMillis();
+        if (now - this.lastPlayerSample < PLAYER_SAMPLE_INTERVAL) {
+            return;
+        }
+        this.lastPlayerSample = now;
+        int radius = Math.max(0, Config.PRIORITY_PLAYER_RADIUS);
+        for (Player player : this.world.getPlayers()) {
+            Point pos = player.getPosition();
+            int regionX = pos.x() >> 9;
+            int regionZ = pos.z() >> 9;
+            for (int x = -radius; x <= radius; x++) {
+                for (int z = -radius; z <= radius; z++) {
+                    touch(regionX + x, regionZ + z, x == 0 && z == 0 ? PLAYER : PLAYER / 2);
+                }
+            }
+        }
+    }
+
+    private record Heat(double value, long time) {
+        private double at(long now) {
+            double halfLife = Math.max(1, Config.PRIORITY_HALF_LIFE) * 1000D;
+            return this.value * Math.pow(0.5D, (now - this.time) / halfLife);
+        }
+    }
+}
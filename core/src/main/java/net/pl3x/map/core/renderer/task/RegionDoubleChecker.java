@@ -30,9 +30,12 @@ import java.util.HashSet;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 
 public class RegionDoubleChecker implements Runnable {
@@ -65,12 +68,22 @@ public class RegionDoubleChecker implements Runnable {
 
             Logger.debug("Region double checker finished run at " + System.currentTimeMillis());
 
-            // rinse and repeat
+            // rinse and repeat, the file watchers catch most changes long before we would
             this.future = null;
-            start(30000L);
+            start(watching() ? Config.FILE_WATCHER_SWEEP_INTERVAL * 1000L : 30000L);
         }, this.executor);
     }
 
+    private boolean watching() {
+        // a single world without a working watcher needs the quick sweeps
+        for (World world : Pl3xMap.api().getWorldRegistry()) {
+            if (world.isEnabled() && !world.getRegionFileWatcher().isWatching()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void stop() {
         if (this.future != null) {
             boolean result = this.future.cancel(true);
@@ -100,9 +113,12 @@ public class RegionDoubleChecker implements Runnable {
                 Collection<Point> modifiedRegions = new HashSet<>();
                 for (Path file : files) {
                     try {
-                        String[] split = file.getFileName().toString().split("\\.");
-                        int rX = Integer.parseInt(split[1]);
-                        int rZ = Integer.parseInt(split[2]);
+                        Point region = FileUtil.regionFileToPoint(file.getFileName().toString());
+                        if (region == null) {
+                            continue;
+                        }
+                        int rX = region.x();
+                        int rZ = region.z();
                         if (!world.visibleRegion(rX, rZ)) {
                             Logger.debug("Skipping region outside of visible areas: " + file.getFileName());
                             continue;
@@ -117,6 +133,7 @@ public class RegionDoubleChecker implements Runnable {
 
                         Logger.debug("Found modified region: " + file.getFileName());
                         modifiedRegions.add(Point.of(rX, rZ));
+                        world.getRegionDemand().touch(rX, rZ, RegionDemand.ACTIVITY);
                     } catch (Throwable t) {
                         Logger.severe("Failed while trying to parse region file %s".formatted(file.toAbsolutePath()), t);
                     }
@@ -25,120 +25,203 @@ package net.pl3x.map.core.renderer.task;
 
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Watches a world's region directory for region files being written.
+ * <p>
+ * Minecraft writes a region file in several steps per save, so events for the same region are
+ * held until the file has been quiet for a while. If the watch service drops events, only the
+ * region files modified since the last event we saw are looked at again.
+ */
 public class RegionFileWatcher implements Runnable {
     private final World world;
+    private final Map<@NotNull Point, @NotNull Long> pending = new ConcurrentHashMap<>(); // <region, last event>
 
-    private Timer timer;
-    private TimerTask task;
     private Thread thread;
+    private WatchService watcher;
 
-    private boolean stopped;
+    private volatile boolean stopped;
+    private volatile boolean watching;
 
     public RegionFileWatcher(@NotNull World world) {
         this.world = world;
     }
 
     public void start() {
-        start(true);
-    }
-
-    public void start(boolean verbose) {
-        if (!Pl3xMap.api().isEnabled()) {
+        if (!Pl3xMap.api().isEnabled() || !Config.FILE_WATCHER_ENABLED) {
             return;
         }
-        if (verbose) {
-            Logger.debug("Starting region file watcher for " + this.world.getName());
-        }
+        Logger.debug("Starting region file watcher for " + this.world.getName());
         stop(false);
-        this.timer = new Timer();
-        this.task = new TimerTask() {
-            @Override
-            public void run() {
-                //RegionFileWatcher rfw = RegionFileWatcher.this;
-                //rfw.thread = Thread.currentThread();
-                //rfw.thread.setName(String.format("Pl3xMap-FileWatcher-%s", rfw.world.getName()));
-                //rfw.stopped = false;
-                //rfw.run();
-            }
-        };
-
-        this.timer.schedule(task, 10000L);
+        this.stopped = false;
+        this.thread = new Thread(this, "Pl3xMap-FileWatcher-" + this.world.getName());
+        this.thread.setDaemon(true);
+        this.thread.start();
     }
 
     public void stop() {
         stop(true);
     }
 
+    /**
+     * Check if this watcher is currently receiving events for the region directory.
+     *
+     * @return True if watching
+     */
+    public boolean isWatching() {
+        return this.watching;
+    }
+
     public void stop(boolean verbose) {
         if (verbose) {
             Logger.debug("Stopping region file watcher for " + this.world.getName());
         }
         this.stopped = true;
-        if (this.task != null) {
-            this.task.cancel();
-        }
-        if (this.timer != null) {
-            this.timer.cancel();
+        WatchService watcher = this.watcher;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignore) {
+            }
         }
         if (this.thread != null) {
             this.thread.interrupt();
+            this.thread = null;
         }
+        this.pending.clear();
     }
 
     @Override
     public void run() {
         Path dir = this.world.getRegionDirectory();
+        long since = System.currentTimeMillis();
+        while (!this.stopped) {
+            if (!Files.isDirectory(dir)) {
+                // nothing has been saved in this world yet, wait quietly for the directory to show up
+                sleep();
+                continue;
+            }
+            try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+                this.watcher = watcher;
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                this.watching = true;
+                Logger.debug("Region file watcher started for " + dir);
+
+                // anything written while we were not watching
+                rescan(dir, since);
+
+                since = watch(watcher);
+            } catch (ClosedWatchServiceException | InterruptedException ignore) {
+            } catch (IOException e) {
+                Logger.severe("Failed to create a new file watcher for directory %s".formatted(dir.toAbsolutePath()), e);
+            }
+            this.watching = false;
+            this.watcher = null;
 
-        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
-
-            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
-            Logger.debug("Region file watcher started for " + dir);
+            if (!this.stopped) {
+                Logger.debug("Region file watcher stopped! Trying to start again..");
+                sleep();
+            }
+        }
+        Logger.debug("Region file watcher stopped!");
+    }
 
-            WatchKey key;
-            while ((key = watcher.take()) != null) {
-                Collection<Path> modifiedFiles = new HashSet<>();
+    private void sleep() {
+        try {
+            Thread.sleep(5000L);
+        } catch (InterruptedException ignore) {
+        }
+    }
 
-                Logger.debug("Region file watcher got a key!");
+    private long watch(@NotNull WatchService watcher) throws InterruptedException {
+        long since = System.currentTimeMillis();
+        while (!this.stopped) {
+            WatchKey key = this.pending.isEmpty() ? watcher.take() : watcher.poll(Config.FILE_WATCHER_DEBOUNCE, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                boolean overflow = false;
+                long now = System.currentTimeMillis();
                 for (WatchEvent<?> event : key.pollEvents()) {
-                    Logger.debug("Region file watcher detected event: " + event.kind().name());
-                    if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
-                        Path file = (Path) event.context();
-                        Logger.debug("Detected file change: " + file.getFileName());
-                        modifiedFiles.add(dir.resolve(file));
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                        continue;
+                    }
+                    Point region = FileUtil.regionFileToPoint(((Path) event.context()).getFileName().toString());
+                    if (region != null) {
+                        this.pending.put(region, now);
                     }
                 }
-                key.reset();
-
-                Collection<Point> points = FileUtil.regionPathsToPoints(this.world, modifiedFiles, true);
-                Pl3xMap.api().getRegionProcessor().addRegions(this.world, points);
+                if (overflow) {
+                    Logger.debug("Region file watcher missed events for " + this.world.getName());
+                    rescan(this.world.getRegionDirectory(), since);
+                }
+                since = now;
+                if (!key.reset()) {
+                    // the directory is gone
+                    return since;
+                }
             }
+            flush();
+        }
+        return since;
+    }
 
-        } catch (ClosedWatchServiceException | InterruptedException ignore) {
+    private void rescan(@NotNull Path dir, long since) {
+        // a second of slack for file systems with coarse timestamps
+        long after = since - Config.FILE_WATCHER_DEBOUNCE - 1000L;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "r.*.mca")) {
+            for (Path file : stream) {
+                Point region = FileUtil.regionFileToPoint(file.getFileName().toString());
+                if (region != null && Files.getLastModifiedTime(file).toMillis() >= after) {
+                    this.pending.put(region, now);
+                }
+            }
         } catch (IOException e) {
-            Logger.severe("Failed to create a new file watcher for directory %s".formatted(dir.toAbsolutePath()), e);
+            Logger.warn("Failed to rescan region files in %s".formatted(dir.toAbsolutePath()), e);
         }
+    }
 
-        if (this.stopped) {
-            Logger.debug("Region file watcher stopped!");
-        } else {
-            Logger.debug("Region file watcher stopped! Trying to start again..");
-            start(false);
+    private void flush() {
+        long quiet = System.currentTimeMillis() - Config.FILE_WATCHER_DEBOUNCE;
+        List<Path> files = new ArrayList<>();
+        this.pending.forEach((region, time) -> {
+            if (time <= quiet && this.pending.remove(region, time)) {
+                files.add(this.world.getMCAFile(region.x(), region.z()));
+            }
+        });
+        if (files.isEmpty()) {
+            return;
+        }
+        try {
+            Collection<Point> regions = FileUtil.regionPathsToPoints(this.world, files, false);
+            if (regions.isEmpty()) {
+                return;
+            }
+            Logger.debug("Region file watcher found " + regions.size() + " modified regions in " + this.world.getName());
+            regions.forEach(region -> this.world.getRegionDemand().touch(region.x(), region.z(), RegionDemand.ACTIVITY));
+            Pl3xMap.api().getRegionProcessor().addRegions(this.world, regions);
+        } catch (Throwable t) {
+            Logger.severe("Failed to queue modified regions for world %s".formatted(this.world.getName()), t);
         }
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Pushes regions through separate load, render and save stages.
+ * <p>
+ * Each stage has its own workers and hands its output to the next stage through a bounded queue,
+ * so loaders can read ahead of the renderers and savers can write behind them without any stage
+ * running away with memory.
+ */
+public class RegionPipeline {
+    private final World world;
+    private final RegionQueue regions;
+    private final BiConsumer<@NotNull Point, @NotNull Boolean> onComplete;
+
+    private final BlockingQueue<@NotNull RegionScanTask> loaded;
+    private final BlockingQueue<@NotNull RegionScanTask> rendered;
+
+    private final Stage loaders;
+    private final Stage renderers;
+    private final Stage savers;
+
+    public RegionPipeline(@NotNull RegionQueue regions, @NotNull BiConsumer<@NotNull Point, @NotNull Boolean> onComplete) {
+        this.world = regions.getWorld();
+        this.regions = regions;
+        this.onComplete = onComplete;
+
+        this.loaded = new ArrayBlockingQueue<>(Math.max(1, Config.PIPELINE_READ_AHEAD));
+        this.rendered = new ArrayBlockingQueue<>(Math.max(1, Config.PIPELINE_WRITE_BEHIND));
+
+        this.loaders = new Stage(Pl3xMap.api().getReaderExecutor());
+        this.renderers = new Stage(Pl3xMap.api().getRenderExecutor());
+        this.savers = new Stage(Pl3xMap.api().getWriterExecutor());
+    }
+
+    /**
+     * Run every region through the pipeline, blocking until the last one is saved.
+     */
+    public void run() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        futures.addAll(this.loaders.start(this::load));
+        futures.addAll(this.renderers.start(this::render));
+        futures.addAll(this.savers.start(this::save));
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private boolean load() throws InterruptedException {
+        if (Pl3xMap.api().getRegionProcessor().isStopped()) {
+            return false;
+        }
+        Point pos = this.regions.poll();
+        if (pos == null) {
+            return false;
+        }
+        this.world.getRenderJournal().started(pos);
+        RegionScanTask task = new RegionScanTask(this.world, pos);
+        if (task.load()) {
+            // blocks while the renderers are behind
+            this.loaded.put(task);
+        } else {
+            complete(task, true);
+        }
+        return true;
+    }
+
+    private boolean render() throws InterruptedException {
+        // blocks while the governor has this worker parked
+        RenderGovernor governor = Pl3xMap.api().getRegionProcessor().getGovernor();
+        governor.enter();
+        RegionScanTask task;
+        boolean scanned;
+        try {
+            task = this.loaded.poll(100, TimeUnit.MILLISECONDS);
+            if (task == null) {
+                return !this.loaders.isDone() || !this.loaded.isEmpty();
+            }
+            scanned = task.scan();
+        } finally {
+            governor.exit();
+        }
+        if (scanned) {
+            // blocks while the savers are behind, without holding on to a governor slot
+            this.rendered.put(task);
+        } else {
+            complete(task, true);
+        }
+        return true;
+    }
+
+    private boolean save() throws InterruptedException {
+        RegionScanTask task = this.rendered.poll(100, TimeUnit.MILLISECONDS);
+        if (task == null) {
+            return !this.renderers.isDone() || !this.rendered.isEmpty();
+        }
+        complete(task, task.save());
+        return true;
+    }
+
+    private void complete(@NotNull RegionScanTask task, boolean saved) {
+        task.cleanup();
+        if (Pl3xMap.api().getRegionProcessor().isStopped()) {
+            // not actually rendered, leave it for the next start
+            return;
+        }
+        this.onComplete.accept(task.getRegionPos(), saved);
+    }
+
+    @FunctionalInterface
+    private interface Work {
+        /**
+         * Do one unit of work.
+         *
+         * @return False when there is nothing left for this stage to do
+         */
+        boolean run() throws InterruptedException;
+    }
+
+    private static final class Stage {
+        private final ExecutorService executor;
+        private final int workers;
+        private final AtomicInteger running = new AtomicInteger();
+
+        private Stage(@NotNull ExecutorService executor) {
+            this.executor = executor;
+            this.workers = executor instanceof ThreadPoolExecutor pool ? pool.getMaximumPoolSize() : 1;
+        }
+
+        private boolean isDone() {
+            return this.running.get() == 0;
+        }
+
+        private @NotNull List<CompletableFuture<Void>> start(@NotNull Work work) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            this.running.set(this.workers);
+            for (int i = 0; i < this.workers; i++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        //noinspection StatementWithEmptyBody
+                        while (work.run()) {
+                        }
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        this.running.decrementAndGet();
+                    }
+                }, this.executor));
+            }
+            return futures;
+        }
+    }
+}
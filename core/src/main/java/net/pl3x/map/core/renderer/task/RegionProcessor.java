@@ -23,12 +23,10 @@
  */
 package net.pl3x.map.core.renderer.task;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -41,7 +39,6 @@ import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.renderer.progress.Progress;
 import net.pl3x.map.core.util.Mathf;
-import net.pl3x.map.core.util.SpiralIterator;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 
@@ -49,12 +46,16 @@ public class RegionProcessor {
     private final Map<@NotNull World, @NotNull Collection<@NotNull Point>> regionsToScan = new ConcurrentHashMap<>();
     private final Deque<@NotNull Ticket> ticketsToScan = new ConcurrentLinkedDeque<>();
 
+    // the batch being rendered right now, hot regions can still join it
+    private volatile RegionQueue queue;
+
     private final Executor executor;
     private final Progress progress;
 
     private CompletableFuture<@NotNull Void> future;
 
-    private boolean paused;
+    private final PauseGate gate = new PauseGate();
+    private final RenderGovernor governor = new RenderGovernor();
 
     private long timeStarted;
     private boolean running;
@@ -64,22 +65,36 @@ public class RegionProcessor {
         this.progress = new Progress();
     }
 
-    @SuppressWarnings("BusyWait")
+    /**
+     * Wait here while rendering is paused.
+     * <p>
+     * Call this between chunks or regions, it is cheap but not free.
+     *
+     * @throws java.util.concurrent.CancellationException if the processor was stopped
+     */
     public void checkPaused() {
-        while (isPaused()) {
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException ignore) {
-            }
-        }
+        this.gate.await();
+        this.governor.pace();
     }
 
     public boolean isPaused() {
-        return this.paused;
+        return this.gate.isPaused();
+    }
+
+    public boolean isStopped() {
+        return this.gate.isStopped();
     }
 
     public void setPaused(boolean paused) {
-        this.paused = paused;
+        if (paused) {
+            this.gate.pause();
+        } else {
+            this.gate.resume();
+        }
+    }
+
+    public @NotNull RenderGovernor getGovernor() {
+        return this.governor;
     }
 
     public @NotNull Progress getProgress() {
@@ -91,6 +106,11 @@ public class RegionProcessor {
     }
 
     public void start(long delay) {
+        this.gate.reset();
+        runAfter(delay);
+    }
+
+    private void runAfter(long delay) {
         this.future = CompletableFuture.runAsync(() -> {
             // wait...
             try {
@@ -99,16 +119,20 @@ public class RegionProcessor {
             }
 
             // run the task
-            if (!isPaused()) {
+            if (!isPaused() && !isStopped()) {
                 run();
             }
 
             // rinse and repeat
-            start(5000L);
+            if (!isStopped()) {
+                runAfter(5000L);
+            }
         }, this.executor);
     }
 
     public void stop() {
+        // anything still rendering bails out at its next check
+        this.gate.stop();
         this.progress.stop();
         if (this.future != null) {
             boolean result = this.future.cancel(true);
@@ -117,7 +141,12 @@ public class RegionProcessor {
     }
 
     public void addRegions(@NotNull World world, @NotNull Collection<@NotNull Point> regions) {
+        world.getRenderJournal().queued(regions);
+        RegionQueue queue = this.queue;
         for (Point region : regions) {
+            if (queue != null && queue.getWorld() == world && joinBatch(queue, region)) {
+                continue;
+            }
             Ticket ticket = new Ticket(world, region);
             if (!this.ticketsToScan.contains(ticket)) {
                 this.ticketsToScan.add(ticket);
@@ -125,6 +154,22 @@ public class RegionProcessor {
         }
     }
 
+    private boolean joinBatch(@NotNull RegionQueue queue, @NotNull Point region) {
+        if (!queue.getWorld().getRegionDemand().isHot(region)) {
+            // cold regions wait for the next batch
+            return false;
+        }
+        int size = queue.size();
+        if (!queue.add(region)) {
+            return false;
+        }
+        if (queue.size() > size) {
+            getProgress().setTotalRegions(getProgress().getTotalRegions() + 1);
+            getProgress().setTotalChunks(getProgress().getTotalRegions() * 1024L);
+        }
+        return true;
+    }
+
     private void run() {
         if (this.running) {
             // this task is already running
@@ -168,70 +213,47 @@ public class RegionProcessor {
     private void process(@NotNull World world, @NotNull Collection<@NotNull Point> regionPositions) {
         Logger.debug(world.getName() + " Region processor started processing at " + System.currentTimeMillis());
 
-        // create spiral iterator to order region scanning
-        Point spawn = world.getSpawn();
-        SpiralIterator spiralIterator = new SpiralIterator(spawn.x() >> 9, spawn.z() >> 9);
-
-        // order preserved map of regions with boolean to signify if it was already scanned
-        List<Point> orderedRegionsToScan = new ArrayList<>();
-
-        // iterate the spiral
-        int totalRegions = regionPositions.size();
-        int numberOfFoundRegions = 0;
-        int numberOfSkippedRegions = 0;
-        while (numberOfFoundRegions < totalRegions) {
-            // let us not get stuck in an endless loop
-            if (numberOfSkippedRegions > 1000000) {
-                Logger.debug("Failsafe triggered.");
-                // we scanned over a million non-existent regions straight
-                // quit the spiral and add the remaining regions to the end
-                orderedRegionsToScan.addAll(regionPositions);
-                break;
-            }
-
-            // get region from spiral and ensure a region file exists for it
-            Point regionPos = spiralIterator.next();
-            if (regionPositions.remove(regionPos)) {
-                // file exists, add region to scan
-                orderedRegionsToScan.add(regionPos);
-                numberOfFoundRegions++;
-                numberOfSkippedRegions = 0;
-            } else {
-                numberOfSkippedRegions++;
-            }
-        }
+        // nearest to spawn first, unless something hotter comes up
+        RegionQueue queue = new RegionQueue(world, regionPositions);
 
         // create and send tasks to executor to run
-        schedule(world, orderedRegionsToScan);
+        schedule(world, queue, regionPositions);
 
         Logger.debug(world.getName() + " Region processor finished processing at " + System.currentTimeMillis());
     }
 
-    private void schedule(@NotNull World world, @NotNull List<@NotNull Point> orderedRegionsToScan) {
+    private void schedule(@NotNull World world, @NotNull RegionQueue queue, @NotNull Collection<@NotNull Point> regions) {
         getProgress().setWorld(world);
-        getProgress().setTotalRegions(orderedRegionsToScan.size());
+        getProgress().setTotalRegions(queue.size());
         getProgress().setTotalChunks(getProgress().getTotalRegions() * 1024L);
 
-        CompletableFuture.allOf(orderedRegionsToScan.stream()
-                .map(pos -> CompletableFuture.runAsync(new RegionScanTask(world, pos), Pl3xMap.api().getRenderExecutor())
-                        .whenComplete((result, throwable) -> {
-                            if (throwable != null) {
-                                Logger.severe("Failed to run region scan task for %s".formatted(world.getName(), pos), throwable);
-                            }
-
-                            // set region modified time
-                            world.getRegionModifiedState().set(Mathf.asLong(pos), this.timeStarted);
-
-                            // run the garbage collector
-                            if (Config.GC_WHEN_RUNNING) {
-                                System.gc();
-                            }
-                        })
-                ).toArray(CompletableFuture[]::new)
-        ).whenComplete((result, throwable) -> {
-            if (throwable != null) {
-                Logger.severe("Failed to run region scan tasks for world %s".formatted(world.getName()), throwable);
-            }
+        // zoomed out tiles wait for every region under them
+        world.getTilePyramid().expect(regions);
+
+        this.queue = queue;
+        try {
+            new RegionPipeline(queue, (pos, saved) -> {
+                if (saved) {
+                    // set region modified time
+                    world.getRegionModifiedState().set(Mathf.asLong(pos), this.timeStarted);
+                    world.getRenderJournal().done(pos, this.timeStarted);
+                }
+
+                // write any zoomed out tiles that were waiting on this region
+                world.getTilePyramid().done(pos);
+
+                // run the garbage collector
+                if (Config.GC_WHEN_RUNNING) {
+                    System.gc();
+                }
+            }).run();
+        } catch (Throwable t) {
+            Logger.severe("Failed to run region scan tasks for world %s".formatted(world.getName()), t);
+        } finally {
+            this.queue = null;
+
+            // write whatever zoomed out tiles are left over
+            world.getTilePyramid().flush();
 
             // stop the progress tracker
             getProgress().finish();
@@ -248,7 +270,7 @@ public class RegionProcessor {
             this.running = false;
 
             Logger.debug(world.getName() + " Region processor finished task at " + System.currentTimeMillis());
-        }).join();
+        }
     }
 
     private record Ticket(@NotNull World world, @NotNull Point region) {
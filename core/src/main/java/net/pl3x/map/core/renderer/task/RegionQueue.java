@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The regions of a render batch, handed out hottest first.
+ * <p>
+ * Regions are handed out nearest to spawn first, unless the world's {@link RegionDemand}
+ * has a hot region waiting. Hot regions can only jump the queue so many times in a row
+ * before a background region gets its turn, so nothing waits forever.
+ */
+public class RegionQueue {
+    private final World world;
+    private final Deque<@NotNull Point> background;
+    private final Set<@NotNull Long> pending = new HashSet<>();
+
+    private int streak;
+    private boolean closed;
+
+    public RegionQueue(@NotNull World world, @NotNull Collection<@NotNull Point> regions) {
+        this.world = world;
+
+        Point spawn = world.getSpawn();
+        int spawnX = spawn.x() >> 9;
+        int spawnZ = spawn.z() >> 9;
+        this.background = new ArrayDeque<>(regions.stream()
+                .sorted(Comparator.<Point>comparingInt(pos -> Math.max(Math.abs(pos.x() - spawnX), Math.abs(pos.z() - spawnZ)))
+                        .thenComparingInt(pos -> Mathf.distanceSquared(pos.x(), pos.z(), spawnX, spawnZ)))
+                .toList());
+        for (Point region : this.background) {
+            this.pending.add(Mathf.asLong(region));
+        }
+    }
+
+    public @NotNull World getWorld() {
+        return this.world;
+    }
+
+    public synchronized int size() {
+        return this.pending.size();
+    }
+
+    /**
+     * Add a region to this batch while it is running.
+     *
+     * @param region Region to add
+     * @return False if this batch already handed out its last region
+     */
+    public synchronized boolean add(@NotNull Point region) {
+        if (this.closed) {
+            return false;
+        }
+        if (!this.pending.contains(Mathf.asLong(region))) {
+            // before it can be handed out, so its parent tiles wait for it
+            this.world.getTilePyramid().expect(List.of(region));
+            this.pending.add(Mathf.asLong(region));
+            this.background.add(region);
+        }
+        return true;
+    }
+
+    /**
+     * Take the next region to render.
+     *
+     * @return Next region, or null once the batch is empty
+     */
+    public synchronized @Nullable Point poll() {
+        if (this.pending.isEmpty()) {
+            // nothing can be added from here on, the loaders are on their way out
+            this.closed = true;
+            return null;
+        }
+        if (this.streak < Math.max(1, Config.PRIORITY_HOT_STREAK)) {
+            long hottest = this.world.getRegionDemand().hottest(this.pending);
+            if (hottest != Long.MIN_VALUE) {
+                this.streak++;
+                this.pending.remove(hottest);
+                return Point.of(Mathf.longToX(hottest), Mathf.longToZ(hottest));
+            }
+        }
+        this.streak = 0;
+        while (true) {
+            Point region = this.background.poll();
+            if (region == null) {
+                // every pending region is also in the background order, this can't really happen
+                this.closed = true;
+                return null;
+            }
+            if (this.pending.remove(Mathf.asLong(region))) {
+                return region;
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.io.File;
+import java.util.Arrays;
+import net.pl3x.map.core.world.Chunk;
+import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.RegionBiomeGrid;
+import net.pl3x.map.core.world.RegionChanges;
+import net.pl3x.map.core.world.RegionEdgeCache;
+import net.pl3x.map.core.world.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Per-region data shared by every renderer during a scan.
+ * <p>
+ * Surface heights are kept in a 514x514 grid covering the region plus a one block halo, so
+ * heightmaps and shading can look at their neighbors by index. The halo is filled from the
+ * neighbors' cached edges when they are fresh, and only decodes the neighbor otherwise.
+ * <p>
+ * When only some chunks changed, heights are only filled in around those chunks.
+ */
+public class RegionRenderContext {
+    public static final int SIZE = 514;
+
+    private final Region region;
+    private final RegionChanges changes;
+    private final RegionBiomeGrid biomeGrid;
+    private final long modified;
+    private final int minX;
+    private final int minZ;
+
+    private int[] heights;
+    private boolean halo;
+
+    public RegionRenderContext(@NotNull Region region, @NotNull RegionChanges changes) {
+        this.region = region;
+        this.changes = changes;
+        this.biomeGrid = new RegionBiomeGrid(region, changes);
+        this.modified = region.getRegionFile().lastModified();
+        this.minX = (region.getX() << 9) - 1;
+        this.minZ = (region.getZ() << 9) - 1;
+    }
+
+    public @NotNull Region getRegion() {
+        return this.region;
+    }
+
+    public @NotNull RegionChanges getChanges() {
+        return this.changes;
+    }
+
+    public @NotNull RegionBiomeGrid getBiomeGrid() {
+        return this.biomeGrid;
+    }
+
+    /**
+     * Get the surface height of a column in this region or right next to it.
+     *
+     * @param blockX Block X coordinate, up to one block outside the region
+     * @param blockZ Block Z coordinate, up to one block outside the region
+     * @return Surface block Y, or {@link Chunk#NO_HEIGHT} if there is no data
+     */
+    public int getHeight(int blockX, int blockZ) {
+        if (!this.halo) {
+            fillHalo();
+        }
+        return this.heights[(blockZ - this.minZ) * SIZE + (blockX - this.minX)];
+    }
+
+    /**
+     * Store this region's border heights so neighbors don't have to decode it.
+     */
+    public void saveEdges() {
+        int[] heights = getInterior();
+        int[] edges = new int[512 << 2];
+        if (!this.changes.isFull()) {
+            // patch the changed chunks into what we had before, we didn't read the rest
+            int[] old = this.region.getWorld().getRegionEdgeCache().get(this.region.getX(), this.region.getZ(), 0L);
+            if (old == null) {
+                return;
+            }
+            System.arraycopy(old, 0, edges, 0, edges.length);
+        }
+        for (int i = 0; i < 512; i++) {
+            if (needsChunk(0, i)) {
+                edges[(RegionEdgeCache.WEST << 9) + i] = heights[(i + 1) * SIZE + 1];
+            }
+            if (needsChunk(511, i)) {
+                edges[(RegionEdgeCache.EAST << 9) + i] = heights[(i + 1) * SIZE + 512];
+            }
+            if (needsChunk(i, 0)) {
+                edges[(RegionEdgeCache.NORTH << 9) + i] = heights[SIZE + i + 1];
+            }
+            if (needsChunk(i, 511)) {
+                edges[(RegionEdgeCache.SOUTH << 9) + i] = heights[512 * SIZE + i + 1];
+            }
+        }
+        this.region.getWorld().getRegionEdgeCache().set(this.region.getX(), this.region.getZ(), this.modified, edges);
+    }
+
+    private int @NotNull [] getInterior() {
+        if (this.heights != null) {
+            return this.heights;
+        }
+        int[] heights = new int[SIZE * SIZE];
+        Arrays.fill(heights, Chunk.NO_HEIGHT);
+        int startX = this.region.getX() << 5;
+        int startZ = this.region.getZ() << 5;
+        for (int chunkX = startX; chunkX < startX + 32; chunkX++) {
+            for (int chunkZ = startZ; chunkZ < startZ + 32; chunkZ++) {
+                if (!this.changes.needsChunk(this.region.getX(), this.region.getZ(), chunkX, chunkZ)) {
+                    continue;
+                }
+                Chunk chunk = this.region.getChunk(chunkX, chunkZ);
+                for (int blockZ = chunkZ << 4; blockZ < (chunkZ << 4) + 16; blockZ++) {
+                    int row = (blockZ - this.minZ) * SIZE - this.minX;
+                    for (int blockX = chunkX << 4; blockX < (chunkX << 4) + 16; blockX++) {
+                        heights[row + blockX] = chunk.getBlockY(blockX, blockZ);
+                    }
+                }
+            }
+        }
+        return this.heights = heights;
+    }
+
+    private boolean needsChunk(int x, int z) {
+        return this.changes.needsChunk(((z >> 4) << 5) + (x >> 4));
+    }
+
+    private void fillHalo() {
+        getInterior();
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (dx != 0 || dz != 0) {
+                    fillHalo(dx, dz);
+                }
+            }
+        }
+        this.halo = true;
+    }
+
+    private void fillHalo(int dx, int dz) {
+        World world = this.region.getWorld();
+        int regionX = this.region.getX() + dx;
+        int regionZ = this.region.getZ() + dz;
+
+        // the halo cells that belong to this neighbor
+        int fromX = dx < 0 ? this.minX : dx > 0 ? this.minX + SIZE - 1 : this.minX + 1;
+        int toX = dx == 0 ? fromX + 512 : fromX + 1;
+        int fromZ = dz < 0 ? this.minZ : dz > 0 ? this.minZ + SIZE - 1 : this.minZ + 1;
+        int toZ = dz == 0 ? fromZ + 512 : fromZ + 1;
+
+        File file = world.getRegion(this.region, regionX, regionZ).getRegionFile();
+        if (!file.exists()) {
+            return;
+        }
+
+        int[] edges = world.getRegionEdgeCache().get(regionX, regionZ, file.lastModified());
+        for (int blockZ = fromZ; blockZ < toZ; blockZ++) {
+            int row = (blockZ - this.minZ) * SIZE - this.minX;
+            for (int blockX = fromX; blockX < toX; blockX++) {
+                if (!this.changes.needsChunk(this.region.getX(), this.region.getZ(), blockX >> 4, blockZ >> 4)) {
+                    continue;
+                }
+                int height;
+                if (edges == null) {
+                    height = world.getChunk(this.region, blockX >> 4, blockZ >> 4).getBlockY(blockX, blockZ);
+                } else if (dx != 0) {
+                    height = edges[((dx < 0 ? RegionEdgeCache.EAST : RegionEdgeCache.WEST) << 9) + (blockZ & 511)];
+                } else {
+                    height = edges[((dz < 0 ? RegionEdgeCache.SOUTH : RegionEdgeCache.NORTH) << 9) + (blockX & 511)];
+                }
+                this.heights[row + blockX] = height;
+            }
+        }
+    }
+}
@@ -24,17 +24,26 @@
 package net.pl3x.map.core.renderer.task;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
 import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.registry.RendererRegistry;
 import net.pl3x.map.core.renderer.Renderer;
+import net.pl3x.map.core.renderer.heightmap.Heightmap;
 import net.pl3x.map.core.util.Mathf;
 import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.RegionChanges;
+import net.pl3x.map.core.world.RegionFile;
 import net.pl3x.map.core.world.World;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -45,6 +54,11 @@ public class RegionScanTask implements Runnable {
 
     private final Map<@NotNull String, @NotNull Renderer> renderers = new LinkedHashMap<>();
 
+    private Region region;
+    private RegionRenderContext context;
+    private RegionChanges changes = RegionChanges.FULL;
+    private long[] chunkStates;
+
     public RegionScanTask(@NotNull World world, @NotNull Point regionPos) {
         this.world = world;
         this.regionPos = regionPos;
@@ -67,6 +81,28 @@ public class RegionScanTask implements Runnable {
         return this.world;
     }
 
+    public @NotNull Point getRegionPos() {
+        return this.regionPos;
+    }
+
+    /**
+     * Get the shared render data of the region currently being scanned.
+     *
+     * @return Region render context
+     */
+    public @NotNull RegionRenderContext getRenderContext() {
+        return Objects.requireNonNull(this.context);
+    }
+
+    /**
+     * Get the chunks of the region that are being rendered.
+     *
+     * @return Region changes
+     */
+    public @NotNull RegionChanges getChanges() {
+        return this.changes;
+    }
+
     public @Nullable Renderer getRenderer(@NotNull String id) {
         return this.renderers.get(id);
     }
@@ -77,6 +113,46 @@ public class RegionScanTask implements Runnable {
 
     @Override
     public void run() {
+        if (load() && scan()) {
+            save();
+        }
+    }
+
+    /**
+     * Read and decode the region's chunks.
+     * <p>
+     * Only the chunks that changed since the last render, and the ones around them, are decoded.
+     *
+     * @return True if the region was loaded and has something to render
+     */
+    public boolean load() {
+        try {
+            Logger.debug("[" + this.world.getName() + "] Loading " + regionPos + " -- " + Thread.currentThread().getName());
+
+            Pl3xMap.api().getRegionProcessor().checkPaused();
+
+            this.region = loadRegion();
+            if (this.changes.isEmpty()) {
+                Logger.debug("[" + this.world.getName() + "] No chunks changed in " + regionPos);
+                this.world.getRegionModifiedState().setChunks(this.regionPos.x(), this.regionPos.z(), this.chunkStates);
+                cleanup();
+                return false;
+            }
+            return true;
+        } catch (CancellationException e) {
+            return false;
+        } catch (Throwable t) {
+            Logger.severe("Failed to load world %s at region %s".formatted(world.getName(), regionPos), t);
+            return false;
+        }
+    }
+
+    /**
+     * Render the loaded region into each renderer's image.
+     *
+     * @return True if the region was scanned
+     */
+    public boolean scan() {
         try {
             Logger.debug("[" + this.world.getName() + "] Scanning " + regionPos + " -- " + Thread.currentThread().getName());
 
@@ -86,13 +162,42 @@ public class RegionScanTask implements Runnable {
 
             Pl3xMap.api().getRegionProcessor().checkPaused();
 
-            scanRegion(loadRegion());
+            this.context = new RegionRenderContext(Objects.requireNonNull(this.region), this.changes);
+            scanRegion(this.region);
+            this.context.saveEdges();
+            return true;
+        } catch (CancellationException e) {
+            return false;
+        } catch (Throwable t) {
+            Logger.severe("Failed to scan world %s at region %s".formatted(world.getName(), regionPos), t);
+            return false;
+        } finally {
+            // the decoded chunks are no longer needed by us
+            this.region = null;
+            this.context = null;
+            Heightmap.releaseRegionContext();
+        }
+    }
+
+    /**
+     * Encode and write each renderer's image to disk.
+     *
+     * @return True if the images were saved
+     */
+    public boolean save() {
+        try {
+            Logger.debug("[" + this.world.getName() + "] Saving " + regionPos + " -- " + Thread.currentThread().getName());
 
             Pl3xMap.api().getRegionProcessor().checkPaused();
 
-            saveImages();
+            return saveImages();
+        } catch (CancellationException e) {
+            return false;
         } catch (Throwable t) {
-            Logger.severe("Failed to scan world %s at region %s".formatted(world.getName(), regionPos), t);
+            Logger.severe("Failed to save world %s at region %s".formatted(world.getName(), regionPos), t);
+            return false;
+        } finally {
+            cleanup();
         }
     }
 
@@ -105,28 +210,114 @@ public class RegionScanTask implements Runnable {
 
     private @NotNull Region loadRegion() {
         Region region = this.world.getRegion(null, this.regionPos.x(), this.regionPos.z());
-        try {
-            region.loadChunks();
+        // unmapped again as soon as the chunks are decoded
+        try (RegionFile file = region.openFile()) {
+            this.changes = findChanges(file);
+            if (!this.changes.isEmpty()) {
+                region.loadChunks(file, this.changes);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         return region;
     }
 
+    private @NotNull RegionChanges findChanges(@Nullable RegionFile file) {
+        long[] previous = this.world.getRegionModifiedState().getChunks(this.regionPos.x(), this.regionPos.z());
+        long[] states = this.chunkStates = new long[1024];
+        if (file == null) {
+            return RegionChanges.FULL;
+        }
+
+        BitSet changed = new BitSet(1024);
+        CRC32 crc = new CRC32();
+        for (int index = 0; index < 1024; index++) {
+            if (!file.hasChunk(index)) {
+                continue;
+            }
+            long timestamp = (long) file.getTimestamp(index) << 32;
+            if (previous != null && (previous[index] & 0xFFFFFFFF00000000L) == timestamp) {
+                // saved at the same time, trust it to be the same
+                states[index] = previous[index];
+                continue;
+            }
+            // the timestamp moves on every save, only the payload tells us if anything is different
+            long hash = 0;
+            try {
+                ByteBuffer payload = file.getPayload(index);
+                if (payload != null) {
+                    crc.reset();
+                    crc.update(payload);
+                    hash = crc.getValue();
+                }
+            } catch (IOException ignore) {
+            }
+            states[index] = timestamp | hash;
+            if (previous == null || (int) previous[index] != (int) hash || hash == 0) {
+                changed.set(index);
+            }
+        }
+        if (previous != null) {
+            // chunks that were deleted since the last render
+            for (int index = 0; index < 1024; index++) {
+                if (previous[index] != 0 && states[index] == 0) {
+                    changed.set(index);
+                }
+            }
+        }
+
+        if (previous == null || changed.cardinality() > Config.PARTIAL_RENDER_MAX_CHUNKS) {
+            return RegionChanges.FULL;
+        }
+        int margin = 0;
+        for (Renderer renderer : this.renderers.values()) {
+            if (!renderer.supportsPartial() || !renderer.hasData(this.regionPos)) {
+                return RegionChanges.FULL;
+            }
+            margin = Math.max(margin, renderer.getPartialMargin());
+        }
+        // biome blending reaches as far as the heightmap shading, or further
+        int reach = Math.max(1, this.world.getConfig().RENDER_BIOME_BLEND);
+        return new RegionChanges(changed, reach, margin, reach);
+    }
+
     private void scanRegion(@NotNull Region region) {
+        // renderers that can share a single pass over the region
+        List<Renderer> fused = new ArrayList<>();
         for (Renderer renderer : this.renderers.values()) {
+            if (renderer.isFused()) {
+                fused.add(renderer);
+                continue;
+            }
+            // this one walks the region on its own
             Pl3xMap.api().getRegionProcessor().checkPaused();
             renderer.scanData(region);
         }
+        Renderer.scanData(region, fused);
         Pl3xMap.api().getRegionProcessor().getProgress().increment();
     }
 
-    private void saveImages() {
+    private boolean saveImages() {
+        boolean saved = true;
         for (Renderer renderer : this.renderers.values()) {
             Pl3xMap.api().getRegionProcessor().checkPaused();
-            renderer.saveData(this.regionPos);
+            try {
+                renderer.saveData(this.regionPos);
+            } catch (Throwable t) {
+                Logger.severe("Failed to save %s tiles for world %s at region %s".formatted(renderer.getKey(), world.getName(), regionPos), t);
+                saved = false;
+            }
+        }
+        if (!saved) {
+            // keep the old states so the region renders again next time
+            return false;
+        }
+        // remember which chunks these images show
+        if (this.chunkStates != null) {
+            world.getRegionModifiedState().setChunks(this.regionPos.x(), this.regionPos.z(), this.chunkStates);
         }
         // set region modified time
         world.getRegionModifiedState().set(Mathf.asLong(this.regionPos), System.currentTimeMillis());
+        return true;
     }
 }
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.util.Mathf;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps the render threads out of the way of the server's main thread.
+ * <p>
+ * The platform reports how long each server tick took. About once a second the average tick time
+ * is compared against the target; when the server is behind, first render workers are parked and
+ * then the remaining workers are made to rest between chunks. Once the server has been comfortably
+ * below the target for a while, the same steps are undone in reverse.
+ */
+public class RenderGovernor {
+    private static final double TICK_BUDGET = 50.0D;
+    private static final long MIN_SLICE = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long MAX_GAP = TimeUnit.SECONDS.toNanos(1);
+
+    private final ThreadLocal<long[]> slice = ThreadLocal.withInitial(() -> new long[1]);
+
+    private volatile boolean reporting;
+    private volatile double mspt;
+    private volatile int maxWorkers = 1;
+    private volatile int workers = 1;
+    private volatile double duty = 1.0D;
+    private volatile String decision = "waiting";
+
+    private int running;
+    private int ticks;
+    private int calm;
+
+    /**
+     * Set the number of render threads the governor can hand out.
+     *
+     * @param maxWorkers Size of the render thread pool
+     */
+    public synchronized void reset(int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        // start where the fixed thread count used to be and work up from there
+        int start = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.workers = Mathf.clamp(getMinWorkers(), this.maxWorkers, start);
+        this.duty = 1.0D;
+        this.calm = 0;
+        this.ticks = 0;
+        this.decision = "waiting";
+        notifyAll();
+    }
+
+    /**
+     * Report the duration of a finished server tick.
+     * <p>
+     * Call this from the server's main thread at the end of every tick.
+     *
+     * @param nanos How long the tick took
+     */
+    public void recordTick(long nanos) {
+        if (!Config.GOVERNOR_ENABLED) {
+            return;
+        }
+        double ms = nanos / 1_000_000.0D;
+        double mspt = this.mspt;
+        this.mspt = this.reporting ? mspt + (ms - mspt) * 0.1D : ms;
+        this.reporting = true;
+        if (++this.ticks >= 20) {
+            this.ticks = 0;
+            adjust();
+        }
+    }
+
+    /**
+     * Whether the governor is limiting the render threads at all.
+     *
+     * @return True if enabled and the platform reports tick times
+     */
+    public boolean isActive() {
+        return Config.GOVERNOR_ENABLED && this.reporting;
+    }
+
+    public double getMspt() {
+        return this.mspt;
+    }
+
+    public int getWorkers() {
+        return isActive() ? this.workers : this.maxWorkers;
+    }
+
+    public int getMaxWorkers() {
+        return this.maxWorkers;
+    }
+
+    public double getDuty() {
+        return isActive() ? this.duty : 1.0D;
+    }
+
+    public @NotNull String getDecision() {
+        return this.decision;
+    }
+
+    /**
+     * Wait here until this render thread is allowed to work.
+     * <p>
+     * Must be paired with {@link #exit()}.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void enter() throws InterruptedException {
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+        while (this.running >= getWorkers() && !processor.isStopped()) {
+            wait(100L);
+        }
+        this.running++;
+    }
+
+    public synchronized void exit() {
+        this.running--;
+        notifyAll();
+    }
+
+    /**
+     * Rest the calling thread long enough to keep it at the current duty cycle.
+     * <p>
+     * Call this between chunks, the time since the last rest counts as work.
+     */
+    public void pace() {
+        double duty = getDuty();
+        long[] slice = this.slice.get();
+        long now = System.nanoTime();
+        if (duty >= 1.0D || slice[0] == 0 || now - slice[0] > MAX_GAP) {
+            // not throttled, or this thread was doing something else in between
+            slice[0] = now;
+            return;
+        }
+        long worked = now - slice[0];
+        if (worked < MIN_SLICE) {
+            return;
+        }
+        LockSupport.parkNanos(this, (long) (worked * (1.0D - duty) / duty));
+        slice[0] = System.nanoTime();
+    }
+
+    private synchronized void adjust() {
+        double target = Config.GOVERNOR_TARGET_MSPT;
+        double mspt = this.mspt;
+        int min = getMinWorkers();
+        double minDuty = Mathf.clamp(0.01D, 1.0D, Config.GOVERNOR_MIN_DUTY);
+
+        if (mspt >= TICK_BUDGET) {
+            // the game loop is already late, get out of the way right now
+            this.calm = 0;
+            this.workers = min;
+            this.duty = minDuty;
+            this.decision = "overloaded";
+        } else if (mspt > target) {
+            this.calm = 0;
+            if (this.workers > min) {
+                this.workers--;
+                this.decision = "removing workers";
+            } else if (this.duty > minDuty) {
+                this.duty = Math.max(minDuty, this.duty / 2.0D);
+                this.decision = "lowering duty";
+            } else {
+                this.decision = "at minimum";
+            }
+        } else if (mspt < target * (1.0D - Config.GOVERNOR_HYSTERESIS)) {
+            if (++this.calm < Config.GOVERNOR_CALM_SECONDS) {
+                return;
+            }
+            this.calm = 0;
+            if (this.duty < 1.0D) {
+                this.duty = Math.min(1.0D, this.duty * 2.0D);
+                this.decision = "raising duty";
+            } else if (this.workers < this.maxWorkers) {
+                this.workers++;
+                this.decision = "adding workers";
+            } else {
+                this.decision = "at maximum";
+            }
+        } else {
+            // inside the band, leave things be
+            this.calm = 0;
+            this.decision = "holding";
+        }
+        notifyAll();
+    }
+
+    private int getMinWorkers() {
+        return Mathf.clamp(1, this.maxWorkers, Config.GOVERNOR_MIN_THREADS);
+    }
+}
@@ -31,8 +31,7 @@ import javax.imageio.ImageIO;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.world.Biome;
 import net.pl3x.map.core.world.BlockState;
-import net.pl3x.map.core.world.Chunk;
-import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.RegionBiomeGrid;
 import org.jetbrains.annotations.NotNull;
 
 @SuppressWarnings("unused")
@@ -142,6 +141,25 @@ public class Colors {
         );
     }
 
+    /**
+     * Linear interpolation between two colors in fixed point, rounding towards color0 like {@link #lerpARGB(int, int, float)}.
+     *
+     * @param color0 color at delta 0
+     * @param color1 color at delta 256
+     * @param delta  position between the colors (0 - 256)
+     * @return interpolated color
+     */
+    public static int lerpARGBFixed(int color0, int color1, int delta) {
+        if (color0 == color1 || delta <= 0) return color0;
+        if (delta >= 256) return color1;
+        return argb(
+                alpha(color0) + (alpha(color1) - alpha(color0)) * delta / 256,
+                red(color0) + (red(color1) - red(color0)) * delta / 256,
+                green(color0) + (green(color1) - green(color0)) * delta / 256,
+                blue(color0) + (blue(color1) - blue(color0)) * delta / 256
+        );
+    }
+
     public static int inverseLerpRGB(int color0, int color1, float delta) {
         if (color0 == color1) return color0;
         if (delta >= 1F) return color1;
@@ -200,13 +218,22 @@ public class Colors {
      * @see <a href="https://en.wikipedia.org/wiki/Alpha_compositing#Alpha_blending">Alpha Blending</a>
      */
     public static int blend(int color0, int color1) {
-        double a0 = (double) alpha(color0) / 0xFF;
-        double a1 = (double) alpha(color1) / 0xFF;
-        double a = a0 + a1 * (1 - a0);
-        double r = (red(color0) * a0 + red(color1) * a1 * (1 - a0)) / a;
-        double g = (green(color0) * a0 + green(color1) * a1 * (1 - a0)) / a;
-        double b = (blue(color0) * a0 + blue(color1) * a1 * (1 - a0)) / a;
-        return argb((int) a * 0xFF, (int) r, (int) g, (int) b);
+        int a0 = alpha(color0);
+        if (a0 == 0xFF) {
+            return color0;
+        }
+        // premultiplied weights, in 255 * 255 units
+        int w0 = a0 * 0xFF;
+        int w1 = alpha(color1) * (0xFF - a0);
+        int a = w0 + w1;
+        if (a == 0) {
+            return 0;
+        }
+        int r = (red(color0) * w0 + red(color1) * w1) / a;
+        int g = (green(color0) * w0 + green(color1) * w1) / a;
+        int b = (blue(color0) * w0 + blue(color1) * w1) / a;
+        // only a fully opaque result keeps its alpha
+        return argb(a == 0xFF * 0xFF ? 0xFF : 0, r, g, b);
     }
 
     public static int mix(int color0, int color1) {
@@ -217,99 +244,54 @@ public class Colors {
     }
 
     public static int shade(int color, int shade) {
-        float ratio = shade / 255F;
-        int r = (int) ((color >> 16 & 0xFF) * ratio);
-        int g = (int) ((color >> 8 & 0xFF) * ratio);
-        int b = (int) ((color & 0xFF) * ratio);
+        int r = (color >> 16 & 0xFF) * shade / 0xFF;
+        int g = (color >> 8 & 0xFF) * shade / 0xFF;
+        int b = (color & 0xFF) * shade / 0xFF;
         return (0xFF << 24) | (r << 16) | (g << 8) | b;
     }
 
-    public static int getFoliageColor(@NotNull Region region, @NotNull Biome biome, int color, int x, int z) {
-        return sampleNeighbors(region, biome, x, z, (biome2, x2, z2) -> mix(biome2.foliage(), color));
-    }
-
-    public static int getGrassColor(@NotNull Region region, @NotNull Biome biome, int color, int x, int z) {
-        return sampleNeighbors(region, biome, x, z, (biome2, x2, z2) -> mix(biome2.grass(x2, z2), color));
-    }
-
-    public static int getWaterColor(@NotNull Region region, @NotNull Biome biome, int x, int z) {
-        return sampleNeighbors(region, biome, x, z, (biome2, x2, z2) -> biome2.water());
-    }
-
-    private static int sampleNeighbors(@NotNull Region region, @NotNull Biome biome, int x, int z, @NotNull Sampler colorSampler) {
-        int radius = region.getWorld().getConfig().RENDER_BIOME_BLEND;
-        int color = colorSampler.apply(biome, x, z);
-        if (radius < 1) {
-            return color;
-        }
-        int red = red(color);
-        int green = green(color);
-        int blue = blue(color);
-        int count = 1;
-        for (int x2 = x - radius; x2 < x + radius; x2++) {
-            for (int z2 = z - radius; z2 < z + radius; z2++) {
-                if (x2 == x && z2 == z) {
-                    continue;
-                }
-                Chunk.BlockData data = region.getWorld().getChunk(region, x2 >> 4, z2 >> 4).getData(x2, z2); // 3%
-                if (data == null) {
-                    continue;
-                }
-                int color2 = colorSampler.apply(data.getBiome(region, x2, z2), x2, z2); // 2%
-                if (color2 > 0) {
-                    red += red(color2);
-                    green += green(color2);
-                    blue += blue(color2);
-                    count++;
-                }
-            }
-        }
-        return rgb(red / count, green / count, blue / count);
-    }
-
-    public static int fixBlockColor(@NotNull Region region, @NotNull Biome biome, @NotNull BlockState blockstate, int x, int z) {
+    public static int fixBlockColor(@NotNull RegionBiomeGrid grid, @NotNull Biome biome, @NotNull BlockState blockstate, int x, int z) {
         int color = blockstate.getBlock().color();
         if (color <= 0) {
             return 0;
         }
         if (blockstate.getBlock().isFoliage()) {
-            return getFoliageColor(region, biome, color, x, z);
+            return mix(grid.getFoliage(biome, x, z), color);
         }
         if (blockstate.getBlock().isGrass()) {
-            return getGrassColor(region, biome, color, x, z);
+            return mix(grid.getGrass(biome, x, z), color);
         }
         if (blockstate.getBlock().isWater()) {
-            return getWaterColor(region, biome, x, z);
-        }
-        String key = blockstate.getBlock().getKey();
-        if (key.equals("minecraft:melon_stem") || key.equals("minecraft:pumpkin_stem")) {
-            int age = blockstate.getAge();
-            return rgb(age << 5, 0xFF - (age << 3), age << 2);
-        }
-        if (key.equals("minecraft:wheat")) {
-            return lerpRGB(0x007C00, 0xDCBB65, (blockstate.getAge() + 1) / 8F);
-        }
-        if (key.equals("minecraft:redstone_wire")) {
-            return Pl3xMap.api().getColorForPower(blockstate.getPower());
+            return grid.getWater(biome, x, z);
         }
-        if (key.equals("minecraft:cocoa")) {
-            return switch (blockstate.getAge()) {
+        return tintBlockColor(blockstate);
+    }
+
+    private static int tintBlockColor(@NotNull BlockState blockstate) {
+        return switch (blockstate.getBlock().getTint()) {
+            case STEM -> {
+                int age = blockstate.getAge();
+                yield rgb(age << 5, 0xFF - (age << 3), age << 2);
+            }
+            case WHEAT -> lerpRGB(0x007C00, 0xDCBB65, (blockstate.getAge() + 1) / 8F);
+            case REDSTONE_WIRE -> Pl3xMap.api().getColorForPower(blockstate.getPower());
+            case COCOA -> switch (blockstate.getAge()) {
                 case 0 -> 0x6A682E;
                 case 1 -> 0x654721;
                 default -> 0x703715;
             };
-        }
-        if (key.equals("minecraft:farmland")) {
-            return blockstate.getMoisture() >= 7 ? 0x512C0F : 0x8E6646;
-        }
-        return blockstate.getBlock().color();
+            case FARMLAND -> blockstate.getMoisture() >= 7 ? 0x512C0F : 0x8E6646;
+            case NONE -> blockstate.getBlock().color();
+        };
     }
 
     public static int mul(int color, float multiplier) {
+        // 16.16 fixed point, so the per channel work is all integer
+        long m = Math.max(0L, (long) (multiplier * 0x10000));
         return (color & (0xFF << 24)) |
-                ((int) Mathf.clamp(0, 0xFF, (color >> 16 & 0xFF) * multiplier) << 16) |
-                ((int) Mathf.clamp(0, 0xFF, (color >> 8 & 0xFF) * multiplier) << 8) |
-                ((int) Mathf.clamp(0, 0xFF, (color & 0xFF) * multiplier));
+                ((int) Math.min(0xFF, (color >> 16 & 0xFF) * m >> 16) << 16) |
+                ((int) Math.min(0xFF, (color >> 8 & 0xFF) * m >> 16) << 8) |
+                ((int) Math.min(0xFF, (color & 0xFF) * m >> 16));
     }
 
     public static int rgb(int red, int green, int blue) {
@@ -351,9 +333,4 @@ public class Colors {
     public static @NotNull String toHex8(int argb) {
         return String.format("#%08X", argb);
     }
-
-    @FunctionalInterface
-    public interface Sampler {
-        @NotNull Integer apply(@NotNull Biome biome, @NotNull Integer x, @NotNull Integer z);
-    }
 }
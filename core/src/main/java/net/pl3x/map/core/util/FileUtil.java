@@ -25,6 +25,8 @@ package net.pl3x.map.core.util;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -192,6 +194,20 @@ public class FileUtil {
         }
     }
 
+    public static byte @NotNull [] gzip(byte @NotNull [] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    public static void gunzip(byte @NotNull [] bytes, @NotNull ByteBuffer buffer) throws IOException {
+        try (GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            buffer.put(gzipIn.readAllBytes());
+        }
+    }
+
     public static String readGzip(@NotNull Path file) throws IOException {
         try (
                 InputStream fileIn = Files.newInputStream(file);
@@ -220,7 +236,6 @@ public class FileUtil {
 
     private static void atomicMove(Path source, Path target, int attempt) throws IOException {
         try {
-            com.google.common.io.Files.move(source.toFile(), target.toFile());
             Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
         } catch (AtomicMoveNotSupportedException e) {
             Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
@@ -267,24 +282,50 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Get the region coordinates from a region file name.
+     *
+     * @param name File name, like {@code r.-1.2.mca}
+     * @return Region coordinates, or null if this is not a region file name
+     */
+    public static @Nullable Point regionFileToPoint(@NotNull String name) {
+        if (!name.startsWith("r.") || !name.endsWith(".mca")) {
+            return null;
+        }
+        int dot = name.indexOf('.', 2);
+        int end = name.length() - 4;
+        if (dot < 0 || dot >= end) {
+            return null;
+        }
+        try {
+            return Point.of(Integer.parseInt(name, 2, dot, 10), Integer.parseInt(name, dot + 1, end, 10));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public static @NotNull Collection<@NotNull Point> regionPathsToPoints(@NotNull World world, @Nullable Collection<@NotNull Path> paths, boolean ignoreTimestamp) {
         if (paths == null || paths.isEmpty()) {
             return Collections.emptyList();
         }
         List<Point> regions = new ArrayList<>();
         for (Path file : paths) {
-            if (file.toFile().length() <= 0) {
-                Logger.debug("Skipping zero length region file: " + file.getFileName());
-                continue;
-            }
             try {
-                String[] split = file.getFileName().toString().split("\\.");
-                int rX = Integer.parseInt(split[1]);
-                int rZ = Integer.parseInt(split[2]);
+                // the name alone tells if the region is visible, only stat files that are
+                Point region = regionFileToPoint(file.getFileName().toString());
+                if (region == null) {
+                    continue;
+                }
+                int rX = region.x();
+                int rZ = region.z();
                 if (!world.visibleRegion(rX, rZ)) {
                     Logger.debug("Skipping region outside of visible areas: " + file.getFileName());
                     continue;
                 }
+                if (file.toFile().length() <= 0) {
+                    Logger.debug("Skipping zero length region file: " + file.getFileName());
+                    continue;
+                }
                 if (ignoreTimestamp) {
                     regions.add(Point.of(rX, rZ));
                     continue;
@@ -297,7 +338,6 @@ public class FileUtil {
                 } else {
                     //Logger.debug("Skipping unmodified region file: " + file.getFileName() + " " + actualModifiedTime + " <= " + storedModifiedTime);
                 }
-            } catch (NumberFormatException ignore) {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
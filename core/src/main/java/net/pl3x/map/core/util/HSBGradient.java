@@ -0,0 +1,49 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.util;
+
+/**
+ * A precomputed {@link Colors#lerpHSB(int, int, float, boolean)} between two colors.
+ */
+public class HSBGradient {
+    private final int[] colors;
+
+    public HSBGradient(int color0, int color1, int steps, boolean useShortestAngle) {
+        this.colors = new int[Math.max(2, steps)];
+        for (int i = 0; i < this.colors.length; i++) {
+            this.colors[i] = Colors.lerpHSB(color0, color1, (float) i / (this.colors.length - 1), useShortestAngle);
+        }
+    }
+
+    /**
+     * Get the color at a point of the gradient.
+     *
+     * @param delta Point of the gradient (0.0 - 1.0)
+     * @return Color at that point
+     */
+    public int get(float delta) {
+        int max = this.colors.length - 1;
+        return this.colors[Mathf.clamp(0, max, Math.round(delta * max))];
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long to long, without boxing either side.
+ * <p>
+ * Not thread safe.
+ */
+public class LongLongMap {
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    // the empty marker can't be stored in the table
+    private boolean hasEmptyKey;
+    private long emptyKeyValue;
+
+    public LongLongMap() {
+        this(16);
+    }
+
+    public LongLongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return this.size + (this.hasEmptyKey ? 1 : 0);
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key Key
+     * @param def Value to return if the key is not in the map
+     * @return Value of the key, or def
+     */
+    public long get(long key, long def) {
+        if (key == EMPTY) {
+            return this.hasEmptyKey ? this.emptyKeyValue : def;
+        }
+        for (int i = slot(key); ; i = (i + 1) & this.mask) {
+            long k = this.keys[i];
+            if (k == key) {
+                return this.values[i];
+            }
+            if (k == EMPTY) {
+                return def;
+            }
+        }
+    }
+
+    public void put(long key, long value) {
+        if (key == EMPTY) {
+            this.hasEmptyKey = true;
+            this.emptyKeyValue = value;
+            return;
+        }
+        for (int i = slot(key); ; i = (i + 1) & this.mask) {
+            long k = this.keys[i];
+            if (k == key) {
+                this.values[i] = value;
+                return;
+            }
+            if (k == EMPTY) {
+                this.keys[i] = key;
+                this.values[i] = value;
+                if (++this.size > (this.mask + 1) * 3 / 4) {
+                    grow();
+                }
+                return;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+        this.hasEmptyKey = false;
+    }
+
+    public void forEach(Consumer consumer) {
+        if (this.hasEmptyKey) {
+            consumer.accept(EMPTY, this.emptyKeyValue);
+        }
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != EMPTY) {
+                consumer.accept(this.keys[i], this.values[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ key >>> 32) & this.mask;
+    }
+
+    private void grow() {
+        long[] keys = this.keys;
+        long[] values = this.values;
+        this.keys = new long[keys.length << 1];
+        this.values = new long[keys.length << 1];
+        this.mask = this.keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (key == EMPTY) {
+                continue;
+            }
+            int j = slot(key);
+            while (this.keys[j] != EMPTY) {
+                j = (j + 1) & this.mask;
+            }
+            this.keys[j] = key;
+            this.values[j] = values[i];
+        }
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, long value);
+    }
+}
@@ -23,6 +23,7 @@
  */
 package net.pl3x.map.core.world;
 
+import java.util.Arrays;
 import java.util.Objects;
 import net.pl3x.map.core.Keyed;
 import net.pl3x.map.core.configuration.ColorsConfig;
@@ -34,8 +35,12 @@ public final class Block extends Keyed {
     private final int color;
     private final int vanilla;
     private final byte bools;
+    private final Tint tint;
     private final BlockState defaultState;
 
+    // interned states with age/moisture/power set, copy on write
+    private volatile BlockState[] states = new BlockState[0];
+
     public Block(int index, @NotNull String id, int vanilla) {
         super(id);
         this.index = index;
@@ -59,6 +64,15 @@ public final class Block extends Keyed {
                 (water || "minecraft:lava".equals(id) ? 1 : 0)
         );
 
+        this.tint = switch (id) {
+            case "minecraft:melon_stem", "minecraft:pumpkin_stem" -> Tint.STEM;
+            case "minecraft:wheat" -> Tint.WHEAT;
+            case "minecraft:redstone_wire" -> Tint.REDSTONE_WIRE;
+            case "minecraft:cocoa" -> Tint.COCOA;
+            case "minecraft:farmland" -> Tint.FARMLAND;
+            default -> Tint.NONE;
+        };
+
         this.defaultState = new BlockState(this);
     }
 
@@ -102,10 +116,57 @@ public final class Block extends Keyed {
         return (this.bools & 1) > 0;
     }
 
+    /**
+     * Get how this block's color changes with its block state.
+     *
+     * @return State tint
+     */
+    public @NotNull Tint getTint() {
+        return this.tint;
+    }
+
     public @NotNull BlockState getDefaultState() {
         return this.defaultState;
     }
 
+    /**
+     * Get the shared block state with the given properties.
+     *
+     * @param age      Age property, or -1 if none
+     * @param moisture Moisture property, or -1 if none
+     * @param power    Power property, or -1 if none
+     * @return Interned block state
+     */
+    public @NotNull BlockState getState(byte age, byte moisture, byte power) {
+        if (age == -1 && moisture == -1 && power == -1) {
+            return this.defaultState;
+        }
+        BlockState state = findState(this.states, age, moisture, power);
+        if (state != null) {
+            return state;
+        }
+        synchronized (this) {
+            BlockState[] states = this.states;
+            state = findState(states, age, moisture, power);
+            if (state == null) {
+                state = new BlockState(this, age, moisture, power);
+                BlockState[] copy = Arrays.copyOf(states, states.length + 1);
+                copy[states.length] = state;
+                this.states = copy;
+            }
+            return state;
+        }
+    }
+
+    private static @Nullable BlockState findState(@NotNull BlockState[] states, byte age, byte moisture, byte power) {
+        for (BlockState state : states) {
+            if (state.getAge() == age && state.getMoisture() == moisture && state.getPower() == power) {
+                return state;
+            }
+        }
+        return null;
+    }
+
     @Override
     public boolean equals(@Nullable Object o) {
         if (this == o) {
@@ -145,4 +206,13 @@ public final class Block extends Keyed {
                 + "defaultBlockState=" + getDefaultState()
                 + "}";
     }
+
+    public enum Tint {
+        NONE,
+        STEM,
+        WHEAT,
+        REDSTONE_WIRE,
+        COCOA,
+        FARMLAND
+    }
 }
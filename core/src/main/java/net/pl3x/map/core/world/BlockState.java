@@ -24,7 +24,11 @@
 package net.pl3x.map.core.world;
 
 import java.util.Map;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class BlockState {
     private final Block block;
@@ -38,28 +42,58 @@ public class BlockState {
     }
 
     public BlockState(@NotNull Block block, @NotNull Map<@NotNull String, @NotNull String> properties) {
-        this.block = block;
+        this(block, parse(properties.get("age")), parse(properties.get("moisture")), parse(properties.get("power")));
+    }
 
-        byte age = -1;
-        try {
-            age = Integer.valueOf(properties.get("age")).byteValue();
-        } catch (NumberFormatException ignore) {
-        }
+    protected BlockState(@NotNull Block block, byte age, byte moisture, byte power) {
+        this.block = block;
         this.age = age;
+        this.moisture = moisture;
+        this.power = power;
+    }
 
+    /**
+     * Get the shared block state for a palette entry's properties.
+     *
+     * @param block      Block
+     * @param properties Palette entry properties, or null if none
+     * @return Interned block state
+     */
+    public static @NotNull BlockState of(@NotNull Block block, @Nullable CompoundTag properties) {
+        byte age = -1;
         byte moisture = -1;
-        try {
-            moisture = Integer.valueOf(properties.get("moisture")).byteValue();
-        } catch (NumberFormatException ignore) {
+        byte power = -1;
+        if (properties != null) {
+            for (Map.Entry<String, Tag<?>> property : properties) {
+                if (!(property.getValue() instanceof StringTag value)) {
+                    continue;
+                }
+                String key = property.getKey();
+                if (key.equalsIgnoreCase("age")) {
+                    age = parse(value.getValue());
+                } else if (key.equalsIgnoreCase("moisture")) {
+                    moisture = parse(value.getValue());
+                } else if (key.equalsIgnoreCase("power")) {
+                    power = parse(value.getValue());
+                }
+            }
         }
-        this.moisture = moisture;
+        return block.getState(age, moisture, power);
+    }
 
-        byte power = -1;
-        try {
-            power = Integer.valueOf(properties.get("power")).byteValue();
-        } catch (NumberFormatException ignore) {
+    private static byte parse(@Nullable String value) {
+        if (value == null || value.isEmpty() || value.length() > 3) {
+            return -1;
         }
-        this.power = power;
+        int result = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return (byte) result;
     }
 
     public @NotNull Block getBlock() {
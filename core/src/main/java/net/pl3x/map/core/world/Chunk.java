@@ -23,7 +23,8 @@
  */
 package net.pl3x.map.core.world;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -45,7 +46,32 @@ public abstract class Chunk {
 
     private final long inhabitedTime;
 
-    protected final BlockData[] data = new BlockData[256];
+    protected static final BlockState[] AIR_STATES = new BlockState[]{Blocks.AIR.getDefaultState()};
+
+    private static final int SECTION_CLASSIFIED = 1;
+    private static final int SECTION_NO_AIR = 1 << 1;
+    private static final int SECTION_SKIPPABLE = 1 << 2;
+    private static final int SECTION_UNIFORM = 1 << 3;
+
+    public static final int NO_HEIGHT = Integer.MIN_VALUE;
+
+    private static final short BIOME_UNKNOWN = -1;
+    private static final short BIOME_DEFAULT = -2;
+
+    // surface columns, indexed by ((z & 0xF) << 4) + (x & 0xF)
+    private final int[] blockY = new int[256];
+    private final int[] fluidY = new int[256];
+    private final short[] blockStates = new short[256];
+    private final short[] fluidStates = new short[256];
+    private final short[] biomes = new short[256];
+
+    // distinct block states found on the surface of this chunk
+    private BlockState[] palette = new BlockState[16];
+    private int paletteSize;
+
+    // translucent glass colors of column i are glassColors[glassStart[i]..glassStart[i + 1]), top down
+    private int[] glassStart;
+    private int[] glassColors;
 
     protected boolean populated;
 
@@ -127,60 +153,88 @@ public abstract class Chunk {
         int startX = getX() << 4;
         int startZ = getZ() << 4;
 
-        // iterate each block in this chunk
-        for (int blockZ = startX; blockZ < startX + 16; blockZ++) {
-            for (int blockX = startZ; blockX < startZ + 16; blockX++) {
-                BlockData data = new BlockData();
-                data.blockY = noHeightmap() ? getWorld().getMaxBuildHeight() : getWorldSurfaceY(blockX, blockZ) + 1;
-
-                // if world has ceiling iterate down until we find air
-                if (getWorld().hasCeiling()) {
-                    data.blockY = getWorld().getLogicalHeight();
-                    do {
-                        data.blockY -= 1;
-                        data.blockstate = getBlockState(blockX, data.blockY, blockZ);
-                    } while (data.blockY > getWorld().getMinBuildHeight() && !data.blockstate.getBlock().isAir());
-                }
+        int glassCount = 0;
+
+        int minY = getWorld().getMinBuildHeight();
+        boolean glass = getWorld().getConfig().RENDER_TRANSLUCENT_GLASS;
 
-                // iterate down until we find a renderable block
+        // lazily classified sections, see sectionFlags()
+        byte[] flags = new byte[((getWorld().getMaxBuildHeight() - minY) >> 4) + 1];
+
+        // iterate each block in this chunk
+        for (int index = 0; index < 256; index++) {
+            int blockX = startX + (index & 0xF);
+            int blockZ = startZ + (index >> 4);
+
+            int blockY = noHeightmap() ? getWorld().getMaxBuildHeight() : getWorldSurfaceY(blockX, blockZ) + 1;
+            int fluidY = 0;
+            BlockState blockstate;
+            BlockState fluidstate = null;
+
+            // if world has ceiling iterate down until we find air
+            if (getWorld().hasCeiling()) {
+                blockY = getWorld().getLogicalHeight();
                 do {
-                    data.blockY -= 1;
-                    data.blockstate = getBlockState(blockX, data.blockY, blockZ);
-                    if (data.blockstate.getBlock().isFluid()) {
-                        if (data.fluidstate == null) {
-                            // get fluid information for the top fluid block
-                            data.fluidY = data.blockY;
-                            data.fluidstate = data.blockstate;
-                            // do not get biome here! causes stackoverflow!
-                            // instead, biome will be lazy loaded on first get
-                            //data.fluidBiome = getWorld().getBiome(blockX, data.fluidY, blockZ);
-                        }
-                        continue;
+                    blockY -= 1;
+                    if ((sectionFlags(flags, blockY >> 4) & SECTION_NO_AIR) != 0) {
+                        // no air anywhere in this section, go straight to its bottom
+                        blockY = Math.max(blockY & ~0xF, minY);
                     }
+                    blockstate = getBlockState(blockX, blockY, blockZ);
+                } while (blockY > minY && !blockstate.getBlock().isAir());
+            }
 
-                    if (getWorld().getConfig().RENDER_TRANSLUCENT_GLASS && data.blockstate.getBlock().isGlass()) {
-                        // translucent glass. store this color and keep iterating
-                        data.glass.addFirst(Colors.setAlpha(0x99, data.blockstate.getBlock().color()));
-                        continue;
+            // iterate down until we find a renderable block
+            do {
+                blockY -= 1;
+                int sectionFlags = sectionFlags(flags, blockY >> 4);
+                if ((sectionFlags & SECTION_SKIPPABLE) != 0) {
+                    // nothing in this section can end the search, go straight to its bottom
+                    blockY = Math.max(blockY & ~0xF, minY);
+                    blockstate = getBlockState(blockX, blockY, blockZ);
+                    continue;
+                }
+                blockstate = getBlockState(blockX, blockY, blockZ);
+                if (blockstate.getBlock().isFluid()) {
+                    if (fluidstate == null) {
+                        // get fluid information for the top fluid block
+                        fluidY = blockY;
+                        fluidstate = blockstate;
                     }
-
-                    // test if block is renderable. we ignore blocks with black color
-                    if (data.blockstate.getBlock().color() > 0) {
-                        break;
+                    if ((sectionFlags & SECTION_UNIFORM) != 0) {
+                        // the whole section is this fluid, go straight to its bottom
+                        blockY = Math.max(blockY & ~0xF, minY);
                     }
-                } while (data.blockY > getWorld().getMinBuildHeight());
+                    continue;
+                }
 
-                // determine the biome of final block
-                // do not get biome here! causes stackoverflow!
-                // instead, biome will be lazy loaded on first get
-                //data.blockBiome = getWorld().getBiome(blockX, data.blockY, blockZ);
+                if (glass && blockstate.getBlock().isGlass()) {
+                    // translucent glass. store this color and keep iterating
+                    glassCount = addGlass(index, glassCount, Colors.setAlpha(0x99, blockstate.getBlock().color()));
+                    continue;
+                }
 
-                if (data.blockstate.getBlock().isFlat()) {
-                    data.blockY--;
+                // test if block is renderable. we ignore blocks with black color
+                if (blockstate.getBlock().color() > 0) {
+                    break;
                 }
+            } while (blockY > minY);
+
+            // do not get biome here! causes stackoverflow!
+            // instead, biome will be lazy loaded on first get
+
+            if (blockstate.getBlock().isFlat()) {
+                blockY--;
+            }
 
-                // save data
-                this.data[((blockZ & 0xF) << 4) + (blockX & 0xF)] = data;
+            // save data
+            this.blockY[index] = blockY;
+            this.fluidY[index] = fluidY;
+            this.blockStates[index] = paletteIndex(blockstate);
+            this.fluidStates[index] = fluidstate == null ? -1 : paletteIndex(fluidstate);
+            this.biomes[index] = BIOME_UNKNOWN;
+            if (this.glassStart != null) {
+                this.glassStart[index + 1] = glassCount;
             }
         }
 
@@ -189,12 +243,97 @@ public abstract class Chunk {
         return this;
     }
 
-    public @NotNull BlockData[] getData() {
-        return this.data;
+    private int sectionFlags(byte @NotNull [] flags, int sectionY) {
+        int i = sectionY - (getWorld().getMinBuildHeight() >> 4);
+        if (i < 0 || i >= flags.length) {
+            return 0;
+        }
+        int sectionFlags = flags[i];
+        if (sectionFlags == 0) {
+            flags[i] = (byte) (sectionFlags = classify(getSectionStates(sectionY)));
+        }
+        return sectionFlags;
+    }
+
+    private int classify(@NotNull BlockState @Nullable [] states) {
+        if (states == null || states.length == 0) {
+            // unknown, has to be walked block by block
+            return SECTION_CLASSIFIED;
+        }
+        boolean glass = getWorld().getConfig().RENDER_TRANSLUCENT_GLASS;
+        boolean noAir = true;
+        boolean skippable = true;
+        for (BlockState state : states) {
+            Block block = state.getBlock();
+            if (block.isAir()) {
+                noAir = false;
+            }
+            if (block.isFluid() || (glass && block.isGlass()) || block.color() > 0) {
+                skippable = false;
+            }
+        }
+        return SECTION_CLASSIFIED
+                | (noAir ? SECTION_NO_AIR : 0)
+                | (skippable ? SECTION_SKIPPABLE : 0)
+                | (states.length == 1 ? SECTION_UNIFORM : 0);
+    }
+
+    /**
+     * Get every block state a section may hold.
+     * <p>
+     * This lets the surface search classify and skip whole sections without unpacking them.
+     *
+     * @param sectionY Section Y (block Y >> 4)
+     * @return Distinct states in the section, or null if unknown
+     */
+    protected @NotNull BlockState @Nullable [] getSectionStates(int sectionY) {
+        return null;
+    }
+
+    private short paletteIndex(@NotNull BlockState state) {
+        for (int i = 0; i < this.paletteSize; i++) {
+            if (this.palette[i] == state) {
+                return (short) i;
+            }
+        }
+        if (this.paletteSize == this.palette.length) {
+            this.palette = Arrays.copyOf(this.palette, this.paletteSize << 1);
+        }
+        this.palette[this.paletteSize] = state;
+        return (short) this.paletteSize++;
+    }
+
+    private int addGlass(int index, int count, int color) {
+        if (this.glassStart == null) {
+            // first glass in this chunk, every column before this one has none
+            this.glassStart = new int[257];
+            this.glassColors = new int[4];
+        } else if (count == this.glassColors.length) {
+            this.glassColors = Arrays.copyOf(this.glassColors, count << 1);
+        }
+        this.glassColors[count] = color;
+        return count + 1;
+    }
+
+    /**
+     * Get the surface height of a column without creating a {@link BlockData} view.
+     *
+     * @param x Block X coordinate
+     * @param z Block Z coordinate
+     * @return Surface block Y, or {@link #NO_HEIGHT} if this chunk has no data
+     */
+    public int getBlockY(int x, int z) {
+        if (!this.populated) {
+            return NO_HEIGHT;
+        }
+        return this.blockY[((z & 0xF) << 4) + (x & 0xF)];
     }
 
     public @Nullable BlockData getData(int x, int z) {
-        return this.data[((z & 0xF) << 4) + (x & 0xF)];
+        if (!this.populated) {
+            return null;
+        }
+        return new BlockData(this, ((z & 0xF) << 4) + (x & 0xF));
     }
 
     public static @NotNull Chunk create(@NotNull World world, @NotNull Region region, @NotNull CompoundTag tag, int index) {
@@ -242,46 +381,81 @@ public abstract class Chunk {
                 + "}";
     }
 
+    /**
+     * View of a single surface column of a chunk.
+     */
     public static class BlockData {
-        protected int blockY;
-        protected int fluidY = 0;
-        protected BlockState blockstate;
-        protected BlockState fluidstate = null;
-        protected Biome biome;
+        private final Chunk chunk;
+        private final int index;
 
-        protected final LinkedList<Integer> glass = new LinkedList<>();
+        protected BlockData(@NotNull Chunk chunk, int index) {
+            this.chunk = chunk;
+            this.index = index;
+        }
 
         public int getBlockY() {
-            return this.blockY;
+            return this.chunk.blockY[this.index];
         }
 
         public int getFluidY() {
-            return this.fluidY;
+            return this.chunk.fluidY[this.index];
         }
 
         public @NotNull BlockState getBlockState() {
-            return this.blockstate;
+            return this.chunk.palette[this.chunk.blockStates[this.index]];
         }
 
         public @Nullable BlockState getFluidState() {
-            return this.fluidstate;
+            short state = this.chunk.fluidStates[this.index];
+            return state < 0 ? null : this.chunk.palette[state];
         }
 
         public @NotNull Biome getBiome(@NotNull Region region, int x, int z) {
-            if (this.biome == null) {
-                int y = this.blockY;
-                // use fluid block level if fluid
-                if (this.fluidstate != null) {
-                    y = this.fluidY;
+            short index = this.chunk.biomes[this.index];
+            if (index == BIOME_DEFAULT) {
+                return Biome.DEFAULT;
+            }
+            if (index != BIOME_UNKNOWN) {
+                Biome biome = region.getWorld().getBiomeRegistry().get(index);
+                if (biome != null) {
+                    return biome;
                 }
-                // calculate real biome
-                this.biome = region.getWorld().getBiomeManager().getBiome(region, x, y, z);
             }
-            return this.biome;
+            // use fluid block level if fluid
+            int y = getFluidState() != null ? getFluidY() : getBlockY();
+            // calculate real biome
+            Biome biome = region.getWorld().getBiomeManager().getBiome(region, x, y, z);
+            this.chunk.biomes[this.index] = biome == Biome.DEFAULT ? BIOME_DEFAULT : (short) biome.index();
+            return biome;
+        }
+
+        /**
+         * Get the number of translucent glass blocks above this column's surface.
+         *
+         * @return Number of glass colors
+         */
+        public int getGlassCount() {
+            int[] start = this.chunk.glassStart;
+            return start == null ? 0 : start[this.index + 1] - start[this.index];
         }
 
-        public @NotNull List<Integer> getGlassColors() {
-            return this.glass;
+        /**
+         * Get a glass color, ordered from the bottom-most glass block up.
+         *
+         * @param i Glass index
+         * @return Glass color
+         */
+        public int getGlassColor(int i) {
+            return this.chunk.glassColors[this.chunk.glassStart[this.index + 1] - 1 - i];
+        }
+
+        public @NotNull List<@NotNull Integer> getGlassColors() {
+            int count = getGlassCount();
+            List<Integer> colors = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                colors.add(getGlassColor(i));
+            }
+            return colors;
         }
     }
 }
@@ -25,15 +25,12 @@
 package net.pl3x.map.core.world;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.util.MCAMath;
 import net.querz.nbt.tag.ByteArrayTag;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.IntArrayTag;
 import net.querz.nbt.tag.ListTag;
-import net.querz.nbt.tag.StringTag;
 import net.querz.nbt.tag.Tag;
 import org.jetbrains.annotations.NotNull;
 
@@ -104,6 +101,15 @@ public class ChunkAnvil115 extends Chunk {
         return section == null ? Blocks.AIR.getDefaultState() : section.getBlockState(x, y, z);
     }
 
+    @Override
+    protected @NotNull BlockState @NotNull [] getSectionStates(int sectionY) {
+        if (sectionY < 0 || sectionY >= this.sections.length) {
+            return AIR_STATES;
+        }
+        Section section = this.sections[sectionY];
+        return section == null ? AIR_STATES : section.getStates();
+    }
+
     @Override
     public int getLight(int x, int y, int z) {
         int sectionY = y >> 4;
@@ -166,20 +172,23 @@ public class ChunkAnvil115 extends Chunk {
                     CompoundTag stateTag = paletteTag.get(i);
                     String id = stateTag.getString("Name");
                     Block block = Pl3xMap.api().getBlockRegistry().getOrDefault(id, Blocks.AIR);
-                    Map<String, String> properties = new HashMap<>();
-                    CompoundTag propertiesTag = stateTag.getCompoundTag("Properties");
-                    if (propertiesTag != null) {
-                        for (Map.Entry<String, Tag<?>> property : propertiesTag) {
-                            properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                        }
-                    }
-                    this.palette[i] = new BlockState(block, properties);
+                    this.palette[i] = BlockState.of(block, stateTag.getCompoundTag("Properties"));
                 }
             }
 
             this.bitsPerBlock = this.blocks.length >> 6;
         }
 
+        public @NotNull BlockState @NotNull [] getStates() {
+            if (this.palette.length == 1) {
+                return this.palette;
+            }
+            if (this.blocks.length == 0) {
+                return AIR_STATES;
+            }
+            return this.palette;
+        }
+
         public @NotNull BlockState getBlockState(int x, int y, int z) {
             if (this.palette.length == 1) {
                 return this.palette[0];
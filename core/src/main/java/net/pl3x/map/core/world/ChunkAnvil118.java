@@ -26,16 +26,13 @@ package net.pl3x.map.core.world;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.util.MCAMath;
 import net.pl3x.map.core.util.PackedIntArrayAccess;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 import net.querz.nbt.tag.StringTag;
-import net.querz.nbt.tag.Tag;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -45,6 +42,7 @@ public class ChunkAnvil118 extends Chunk {
     private Section[] sections = new Section[0];
 
     protected long[] worldSurfaceHeights = new long[0];
+    private PackedIntArrayAccess worldSurface;
 
     private final boolean full;
 
@@ -91,6 +89,12 @@ public class ChunkAnvil118 extends Chunk {
         return section == null ? Blocks.AIR.getDefaultState() : section.getBlockState(x, y, z);
     }
 
+    @Override
+    protected @NotNull BlockState @NotNull [] getSectionStates(int sectionY) {
+        Section section = getSection(sectionY);
+        return section == null ? AIR_STATES : section.getStates();
+    }
+
     @Override
     public int getLight(int x, int y, int z) {
         int sectionY = y >> 4;
@@ -115,7 +119,10 @@ public class ChunkAnvil118 extends Chunk {
         if (noHeightmap()) {
             return getWorld().getMinBuildHeight();
         }
-        return heightmap(getWorld().getMaxBuildHeight(), this.worldSurfaceHeights).get(((z & 0xF) << 4) + (x & 0xF));
+        if (this.worldSurface == null) {
+            this.worldSurface = heightmap(getWorld().getMaxBuildHeight(), this.worldSurfaceHeights);
+        }
+        return this.worldSurface.get(((z & 0xF) << 4) + (x & 0xF));
     }
 
     private @Nullable Section getSection(int y) {
@@ -152,14 +159,7 @@ public class ChunkAnvil118 extends Chunk {
                         CompoundTag entry = paletteTag.get(i);
                         String id = entry.getString("Name");
                         Block block = Pl3xMap.api().getBlockRegistry().getOrDefault(id, Blocks.AIR);
-                        Map<String, String> properties = new HashMap<>();
-                        CompoundTag propertiesTag = entry.getCompoundTag("Properties");
-                        if (propertiesTag != null) {
-                            for (Map.Entry<String, Tag<?>> property : propertiesTag) {
-                                properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                            }
-                        }
-                        this.blockPalette[i] = new BlockState(block, properties);
+                        this.blockPalette[i] = BlockState.of(block, entry.getCompoundTag("Properties"));
                     }
                 }
             }
@@ -186,6 +186,16 @@ public class ChunkAnvil118 extends Chunk {
             this.bitsPerBiome = MCAMath.ceilLog2(this.biomePalette.length);
         }
 
+        public @NotNull BlockState @NotNull [] getStates() {
+            if (this.blockPalette.length == 1) {
+                return this.blockPalette;
+            }
+            if (this.blocks.length == 0) {
+                return AIR_STATES;
+            }
+            return this.blockPalette;
+        }
+
         public @NotNull BlockState getBlockState(int x, int y, int z) {
             if (this.blockPalette.length == 1) {
                 return this.blockPalette[0];
@@ -0,0 +1,372 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.ByteTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.LongTag;
+import net.querz.nbt.tag.ShortTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Streaming chunk NBT reader that only materializes the tags the renderers use.
+ * <p>
+ * Everything else (entities, block entities, structures, ticks, etc.) is skipped at the byte level
+ * without ever being decoded. The result is a regular {@link CompoundTag} holding only the kept tags.
+ */
+public class ChunkTagReader {
+    private static final byte END = 0;
+    private static final byte BYTE = 1;
+    private static final byte SHORT = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte BYTE_ARRAY = 7;
+    private static final byte STRING = 8;
+    private static final byte LIST = 9;
+    private static final byte COMPOUND = 10;
+    private static final byte INT_ARRAY = 11;
+    private static final byte LONG_ARRAY = 12;
+
+    // far more than any array a chunk keeps, lengths come straight from the file
+    private static final int MAX_ARRAY_BYTES = 16 << 20;
+
+    private static final Schema PALETTE = Schema.of(
+            "Name", Schema.ALL,
+            // the only properties block states care about
+            "Properties", Schema.of(
+                    "age", Schema.ALL,
+                    "moisture", Schema.ALL,
+                    "power", Schema.ALL
+            )
+    );
+
+    private static final Schema SECTION = Schema.of(
+            "Y", Schema.ALL,
+            "BlockLight", Schema.ALL,
+            "BlockStates", Schema.ALL,
+            "Palette", PALETTE,
+            "palette", PALETTE,
+            "block_states", Schema.of(
+                    "data", Schema.ALL,
+                    "palette", PALETTE
+            ),
+            "biomes", Schema.ALL
+    );
+
+    private static final Schema HEIGHTMAPS = Schema.of(
+            "WORLD_SURFACE", Schema.ALL
+    );
+
+    private static final Schema CHUNK = Schema.of(
+            "DataVersion", Schema.ALL,
+            "Status", Schema.ALL,
+            "xPos", Schema.ALL,
+            "yPos", Schema.ALL,
+            "zPos", Schema.ALL,
+            "InhabitedTime", Schema.ALL,
+            "Heightmaps", HEIGHTMAPS,
+            "sections", SECTION,
+            // pre 1.18 chunks wrap everything in a level tag
+            "Level", Schema.of(
+                    "Status", Schema.ALL,
+                    "InhabitedTime", Schema.ALL,
+                    "Heightmaps", HEIGHTMAPS,
+                    "Sections", SECTION,
+                    "Biomes", Schema.ALL
+            )
+    );
+
+    private final DataInputStream in;
+    private final int maxDepth;
+
+    private byte[] buffer = new byte[256];
+
+    public ChunkTagReader(@NotNull DataInputStream in) {
+        this(in, Tag.DEFAULT_MAX_DEPTH);
+    }
+
+    public ChunkTagReader(@NotNull DataInputStream in, int maxDepth) {
+        this.in = in;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Read the root chunk tag.
+     *
+     * @return Root compound holding only the tags needed for rendering
+     * @throws IOException If the stream is not a valid chunk tag
+     */
+    public @NotNull CompoundTag read() throws IOException {
+        byte type = this.in.readByte();
+        if (type != COMPOUND) {
+            throw new IOException("Invalid root tag type " + type);
+        }
+        skipBytes(this.in.readUnsignedShort()); // root name
+        return readCompound(CHUNK, 0);
+    }
+
+    private @NotNull CompoundTag readCompound(@NotNull Schema schema, int depth) throws IOException {
+        checkDepth(depth);
+        CompoundTag compound = new CompoundTag();
+        byte type;
+        while ((type = this.in.readByte()) != END) {
+            int length = readName();
+            Schema child = schema.get(this.buffer, length);
+            if (child == null) {
+                skip(type, depth + 1);
+                continue;
+            }
+            String name = new String(this.buffer, 0, length, StandardCharsets.UTF_8);
+            Tag<?> tag = readValue(type, child, depth + 1);
+            if (tag != null) {
+                compound.put(name, tag);
+            }
+        }
+        return compound;
+    }
+
+    private @Nullable Tag<?> readValue(byte type, @NotNull Schema schema, int depth) throws IOException {
+        return switch (type) {
+            case BYTE -> new ByteTag(this.in.readByte());
+            case SHORT -> new ShortTag(this.in.readShort());
+            case INT -> new IntTag(this.in.readInt());
+            case LONG -> new LongTag(this.in.readLong());
+            case FLOAT -> new FloatTag(this.in.readFloat());
+            case DOUBLE -> new DoubleTag(this.in.readDouble());
+            case BYTE_ARRAY -> new ByteArrayTag(readBytes(readLength(1)));
+            case STRING -> new StringTag(this.in.readUTF());
+            case LIST -> readList(schema, depth);
+            case COMPOUND -> readCompound(schema, depth);
+            case INT_ARRAY -> new IntArrayTag(readInts(readLength(4)));
+            case LONG_ARRAY -> new LongArrayTag(readLongs(readLength(8)));
+            default -> throw new IOException("Invalid tag type " + type);
+        };
+    }
+
+    private @Nullable ListTag<?> readList(@NotNull Schema schema, int depth) throws IOException {
+        checkDepth(depth);
+        byte type = this.in.readByte();
+        int length = readLength();
+        if (length == 0) {
+            // renderers treat missing and empty lists the same
+            return null;
+        }
+        switch (type) {
+            case COMPOUND -> {
+                ListTag<CompoundTag> list = new ListTag<>(CompoundTag.class);
+                for (int i = 0; i < length; i++) {
+                    list.add(readCompound(schema, depth + 1));
+                }
+                return list;
+            }
+            case STRING -> {
+                ListTag<StringTag> list = new ListTag<>(StringTag.class);
+                for (int i = 0; i < length; i++) {
+                    list.add(new StringTag(this.in.readUTF()));
+                }
+                return list;
+            }
+            default -> {
+                // no renderer uses any other kind of list
+                for (int i = 0; i < length; i++) {
+                    skip(type, depth + 1);
+                }
+                return null;
+            }
+        }
+    }
+
+    private void skip(byte type, int depth) throws IOException {
+        switch (type) {
+            case BYTE -> skipBytes(1);
+            case SHORT -> skipBytes(2);
+            case INT, FLOAT -> skipBytes(4);
+            case LONG, DOUBLE -> skipBytes(8);
+            case BYTE_ARRAY -> skipBytes(readLength());
+            case STRING -> skipBytes(this.in.readUnsignedShort());
+            case LIST -> {
+                checkDepth(depth);
+                byte listType = this.in.readByte();
+                int length = readLength();
+                int size = fixedSize(listType);
+                if (size > 0) {
+                    skipBytes((long) size * length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        skip(listType, depth + 1);
+                    }
+                }
+            }
+            case COMPOUND -> {
+                checkDepth(depth);
+                byte entryType;
+                while ((entryType = this.in.readByte()) != END) {
+                    skipBytes(this.in.readUnsignedShort());
+                    skip(entryType, depth + 1);
+                }
+            }
+            case INT_ARRAY -> skipBytes(readLength() * 4L);
+            case LONG_ARRAY -> skipBytes(readLength() * 8L);
+            default -> throw new IOException("Invalid tag type " + type);
+        }
+    }
+
+    private static int fixedSize(byte type) {
+        return switch (type) {
+            case END -> 0;
+            case BYTE -> 1;
+            case SHORT -> 2;
+            case INT, FLOAT -> 4;
+            case LONG, DOUBLE -> 8;
+            default -> -1;
+        };
+    }
+
+    private int readName() throws IOException {
+        int length = this.in.readUnsignedShort();
+        ensureBuffer(length);
+        this.in.readFully(this.buffer, 0, length);
+        return length;
+    }
+
+    private int readLength() throws IOException {
+        int length = this.in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative array length " + length);
+        }
+        return length;
+    }
+
+    private int readLength(int elementSize) throws IOException {
+        int length = readLength();
+        if (length > MAX_ARRAY_BYTES / elementSize) {
+            throw new IOException("Array length " + length + " is too large");
+        }
+        return length;
+    }
+
+    private byte @NotNull [] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        this.in.readFully(bytes);
+        return bytes;
+    }
+
+    private int @NotNull [] readInts(int length) throws IOException {
+        int[] ints = new int[length];
+        ensureBuffer(length * 4);
+        this.in.readFully(this.buffer, 0, length * 4);
+        ByteBuffer.wrap(this.buffer, 0, length * 4).asIntBuffer().get(ints);
+        return ints;
+    }
+
+    private long @NotNull [] readLongs(int length) throws IOException {
+        long[] longs = new long[length];
+        ensureBuffer(length * 8);
+        this.in.readFully(this.buffer, 0, length * 8);
+        ByteBuffer.wrap(this.buffer, 0, length * 8).asLongBuffer().get(longs);
+        return longs;
+    }
+
+    private void ensureBuffer(int length) {
+        if (this.buffer.length < length) {
+            this.buffer = new byte[Math.max(length, this.buffer.length << 1)];
+        }
+    }
+
+    private void skipBytes(long length) throws IOException {
+        while (length > 0) {
+            int skipped = this.in.skipBytes((int) Math.min(length, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skip can give up early, make sure we really are at the end
+                if (this.in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private void checkDepth(int depth) throws IOException {
+        if (depth > this.maxDepth) {
+            throw new IOException("Reached maximum depth (" + this.maxDepth + ") of NBT structure");
+        }
+    }
+
+    private static final class Schema {
+        /**
+         * Keep the whole value, whatever it holds.
+         */
+        private static final Schema ALL = new Schema(new byte[0][], new Schema[0]);
+
+        private final byte[][] names;
+        private final Schema[] children;
+
+        private Schema(byte[][] names, Schema[] children) {
+            this.names = names;
+            this.children = children;
+        }
+
+        private static @NotNull Schema of(Object @NotNull ... entries) {
+            byte[][] names = new byte[entries.length / 2][];
+            Schema[] children = new Schema[entries.length / 2];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = ((String) entries[i * 2]).getBytes(StandardCharsets.UTF_8);
+                children[i] = (Schema) entries[i * 2 + 1];
+            }
+            return new Schema(names, children);
+        }
+
+        private @Nullable Schema get(byte @NotNull [] name, int length) {
+            if (this == ALL) {
+                return ALL;
+            }
+            for (int i = 0; i < this.names.length; i++) {
+                byte[] candidate = this.names[i];
+                if (candidate.length == length && Arrays.equals(candidate, 0, length, name, 0, length)) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -25,21 +25,15 @@ package net.pl3x.map.core.world;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Objects;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.log.Logger;
-import net.querz.mca.CompressionType;
-import net.querz.nbt.io.NBTInputStream;
-import net.querz.nbt.io.NamedTag;
+import net.pl3x.map.core.renderer.task.RegionProcessor;
 import net.querz.nbt.tag.CompoundTag;
-import net.querz.nbt.tag.Tag;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -86,9 +80,9 @@ public class Region {
         int index = getChunkIndex(chunkX, chunkZ);
         Chunk chunk = this.chunks[index];
         if (chunk == null) {
-            try (RandomAccessFile raf = new RandomAccessFile(getRegionFile(), "r")) {
-                chunk = loadChunk(raf, index);
-            } catch (EOFException | FileNotFoundException ignore) {
+            try {
+                // a neighbor asking for a chunk we never loaded, read just that one
+                chunk = loadChunk(RegionFile.readChunkInputStream(getRegionFile().toPath(), index), index);
             } catch (IOException e) {
                 Logger.severe("Failed to load chunk at region [%d, %d]".formatted(chunkX, chunkZ), e);
             }
@@ -99,42 +93,60 @@ public class Region {
         return chunk;
     }
 
+    /**
+     * Map a fresh copy of the region file, the file may have changed since we last looked.
+     * <p>
+     * The caller has to close it once the chunks are loaded.
+     *
+     * @return Mapped region file, or null if there is none
+     * @throws IOException If the file could not be mapped
+     */
+    public @Nullable RegionFile openFile() throws IOException {
+        return RegionFile.open(getRegionFile().toPath());
+    }
+
     public void loadChunks() throws IOException {
-        if (!getRegionFile().exists() || getRegionFile().length() <= 0) {
+        try (RegionFile file = openFile()) {
+            loadChunks(file, RegionChanges.FULL);
+        }
+    }
+
+    public void loadChunks(@Nullable RegionFile file, @NotNull RegionChanges changes) {
+        if (file == null) {
             return;
         }
-        try (RandomAccessFile raf = new RandomAccessFile(getRegionFile(), "r")) {
-            for (int index = 0; index < this.chunks.length; index++) {
-                Pl3xMap.api().getRegionProcessor().checkPaused();
-                loadChunk(raf, index);
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+        for (int index = 0; index < this.chunks.length; index++) {
+            if (!changes.needsChunk(index)) {
+                // drop what we had, it gets read from the fresh file if anyone asks
+                this.chunks[index] = null;
+                continue;
+            }
+            processor.checkPaused();
+            try {
+                loadChunk(file, index);
+            } catch (IOException e) {
+                Logger.debug("Skipping bad chunk " + index + " in " + getRegionFile().getName() + ": " + e.getMessage());
+                this.chunks[index] = new EmptyChunk(getWorld(), this);
             }
-        } catch (EOFException ignore) {
         }
     }
 
-    public @NotNull Chunk loadChunk(@NotNull RandomAccessFile raf, int index) throws IOException {
-        raf.seek(index * 4L);
-        int offset = raf.read() << 16;
-        offset |= (raf.read() & 0xFF) << 8;
-        offset |= raf.read() & 0xFF;
-        if (raf.readByte() == 0) {
-            return this.chunks[index] = new EmptyChunk(getWorld(), this);
-        }
-        raf.seek(4096L * offset + 4); // +4 skip chunk size
-
-        byte compressionTypeByte = raf.readByte();
-        CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
-        if (compressionType == null) {
-            throw new IOException("Invalid compression type " + compressionTypeByte);
+    public @NotNull Chunk loadChunk(@NotNull RegionFile file, int index) throws IOException {
+        try {
+            return loadChunk(file.getChunkInputStream(index), index);
+        } catch (InternalError e) {
+            // the mapped file was truncated underneath us
+            throw new IOException("Region file changed while reading", e);
         }
+    }
 
-        DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(new FileInputStream(raf.getFD()))));
-        NamedTag tag = new NBTInputStream(dis).readTag(Tag.DEFAULT_MAX_DEPTH);
-        if (tag != null && tag.getTag() instanceof CompoundTag compoundTag) {
-            return this.chunks[index] = Chunk.create(getWorld(), this, compoundTag, index).populate();
-        } else {
-            throw new IOException("Invalid data tag: " + (tag == null ? "null" : tag.getName()));
+    private @NotNull Chunk loadChunk(@Nullable InputStream in, int index) throws IOException {
+        if (in == null) {
+            return this.chunks[index] = new EmptyChunk(getWorld(), this);
         }
+        CompoundTag tag = new ChunkTagReader(new DataInputStream(new BufferedInputStream(in))).read();
+        return this.chunks[index] = Chunk.create(getWorld(), this, tag, index).populate();
     }
 
     @Override
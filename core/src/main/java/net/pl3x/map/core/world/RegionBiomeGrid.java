@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import net.pl3x.map.core.util.Colors;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Biome colors of a single region, blended once per region instead of once per pixel.
+ * <p>
+ * The region's biomes are sampled into a grid that reaches {@code radius} blocks into the
+ * neighboring regions. Each color plane is then averaged with a sliding box filter, keeping
+ * running column sums so every cell is only added and removed once.
+ */
+public class RegionBiomeGrid {
+    private static final int GRASS = 0;
+    private static final int FOLIAGE = 1;
+    private static final int WATER = 2;
+
+    private final Region region;
+    private final RegionChanges changes;
+    private final int radius;
+    private final int size;
+    private final int originX;
+    private final int originZ;
+
+    private Biome[] biomes;
+    private int[] grass;
+    private int[] foliage;
+    private int[] water;
+
+    public RegionBiomeGrid(@NotNull Region region) {
+        this(region, RegionChanges.FULL);
+    }
+
+    public RegionBiomeGrid(@NotNull Region region, @NotNull RegionChanges changes) {
+        this.region = region;
+        this.changes = changes;
+        this.radius = region.getWorld().getConfig().RENDER_BIOME_BLEND;
+        this.size = 512 + (this.radius << 1);
+        this.originX = (region.getX() << 9) - this.radius;
+        this.originZ = (region.getZ() << 9) - this.radius;
+    }
+
+    public @NotNull Region getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Get the blended grass color at a block.
+     *
+     * @param biome Biome at the block
+     * @param x     Block X coordinate
+     * @param z     Block Z coordinate
+     * @return Blended grass color
+     */
+    public int getGrass(@NotNull Biome biome, int x, int z) {
+        if (this.radius < 1) {
+            return biome.grass(x, z);
+        }
+        if (this.grass == null) {
+            this.grass = blend(GRASS);
+        }
+        return this.grass[index(x, z)];
+    }
+
+    /**
+     * Get the blended foliage color at a block.
+     *
+     * @param biome Biome at the block
+     * @param x     Block X coordinate
+     * @param z     Block Z coordinate
+     * @return Blended foliage color
+     */
+    public int getFoliage(@NotNull Biome biome, int x, int z) {
+        if (this.radius < 1) {
+            return biome.foliage();
+        }
+        if (this.foliage == null) {
+            this.foliage = blend(FOLIAGE);
+        }
+        return this.foliage[index(x, z)];
+    }
+
+    /**
+     * Get the blended water color at a block.
+     *
+     * @param biome Biome at the block
+     * @param x     Block X coordinate
+     * @param z     Block Z coordinate
+     * @return Blended water color
+     */
+    public int getWater(@NotNull Biome biome, int x, int z) {
+        if (this.radius < 1) {
+            return biome.water();
+        }
+        if (this.water == null) {
+            this.water = blend(WATER);
+        }
+        return this.water[index(x, z)];
+    }
+
+    private int index(int x, int z) {
+        return (z & 511) << 9 | (x & 511);
+    }
+
+    private @NotNull Biome[] getBiomes() {
+        if (this.biomes != null) {
+            return this.biomes;
+        }
+        Biome[] biomes = new Biome[this.size * this.size];
+        World world = this.region.getWorld();
+        int maxX = this.originX + this.size;
+        int maxZ = this.originZ + this.size;
+        for (int chunkX = this.originX >> 4; chunkX <= (maxX - 1) >> 4; chunkX++) {
+            int startX = Math.max(chunkX << 4, this.originX);
+            int endX = Math.min((chunkX << 4) + 16, maxX);
+            for (int chunkZ = this.originZ >> 4; chunkZ <= (maxZ - 1) >> 4; chunkZ++) {
+                int startZ = Math.max(chunkZ << 4, this.originZ);
+                int endZ = Math.min((chunkZ << 4) + 16, maxZ);
+                if (!this.changes.needsChunk(this.region.getX(), this.region.getZ(), chunkX, chunkZ)) {
+                    // far enough from anything we redraw to not matter
+                    continue;
+                }
+                Chunk chunk = world.getChunk(this.region, chunkX, chunkZ);
+                for (int z = startZ; z < endZ; z++) {
+                    int row = (z - this.originZ) * this.size - this.originX;
+                    for (int x = startX; x < endX; x++) {
+                        Chunk.BlockData data = chunk.getData(x, z);
+                        if (data != null) {
+                            biomes[row + x] = data.getBiome(this.region, x, z);
+                        }
+                    }
+                }
+            }
+        }
+        return this.biomes = biomes;
+    }
+
+    private int sample(int plane, @NotNull Biome biome, int x, int z) {
+        int color = switch (plane) {
+            case GRASS -> biome.grass(x, z);
+            case FOLIAGE -> biome.foliage();
+            default -> biome.water();
+        };
+        // neighbors only count when they have a color, same as the old per pixel sampler
+        return color > 0 ? color : -1;
+    }
+
+    private int @NotNull [] blend(int plane) {
+        Biome[] biomes = getBiomes();
+        int size = this.size;
+
+        // sample the plane, -1 marks cells that do not take part in the blend
+        int[] values = new int[size * size];
+        for (int z = 0; z < size; z++) {
+            int row = z * size;
+            for (int x = 0; x < size; x++) {
+                Biome biome = biomes[row + x];
+                values[row + x] = biome == null ? -1 : sample(plane, biome, this.originX + x, this.originZ + z);
+            }
+        }
+
+        // running sums of each column over the current window of rows
+        int window = this.radius << 1;
+        int[] colRed = new int[size];
+        int[] colGreen = new int[size];
+        int[] colBlue = new int[size];
+        int[] colCount = new int[size];
+        for (int z = 0; z < window; z++) {
+            addRow(values, z, 1, colRed, colGreen, colBlue, colCount);
+        }
+
+        int[] blended = new int[512 * 512];
+        for (int z = 0; z < 512; z++) {
+            if (z > 0) {
+                addRow(values, z - 1, -1, colRed, colGreen, colBlue, colCount);
+                addRow(values, z + window - 1, 1, colRed, colGreen, colBlue, colCount);
+            }
+            int red = 0, green = 0, blue = 0, count = 0;
+            for (int x = 0; x < window; x++) {
+                red += colRed[x];
+                green += colGreen[x];
+                blue += colBlue[x];
+                count += colCount[x];
+            }
+            int center = (z + this.radius) * size + this.radius;
+            for (int x = 0; x < 512; x++) {
+                if (x > 0) {
+                    int out = x - 1;
+                    int in = x + window - 1;
+                    red += colRed[in] - colRed[out];
+                    green += colGreen[in] - colGreen[out];
+                    blue += colBlue[in] - colBlue[out];
+                    count += colCount[in] - colCount[out];
+                }
+                // the block itself always counts, even when it has no color
+                int n = values[center + x] < 0 ? count + 1 : count;
+                blended[z << 9 | x] = Colors.rgb(red / n, green / n, blue / n);
+            }
+        }
+        return blended;
+    }
+
+    private void addRow(int @NotNull [] values, int z, int sign, int @NotNull [] red, int @NotNull [] green, int @NotNull [] blue, int @NotNull [] count) {
+        int row = z * this.size;
+        for (int x = 0; x < this.size; x++) {
+            int value = values[row + x];
+            if (value < 0) {
+                continue;
+            }
+            red[x] += sign * Colors.red(value);
+            green[x] += sign * Colors.green(value);
+            blue[x] += sign * Colors.blue(value);
+            count[x] += sign;
+        }
+    }
+}
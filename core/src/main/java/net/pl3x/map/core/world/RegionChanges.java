@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.util.BitSet;
+import net.pl3x.map.core.util.Mathf;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The chunks of a region that changed since it was last rendered.
+ * <p>
+ * Only the changed chunks plus a small border around them are redrawn. The border covers
+ * heightmap shading and biome blending of the neighbors, which read from the changed chunks.
+ * Renderers that post process their image may need a few more blocks scanned than they draw.
+ */
+public class RegionChanges {
+    /**
+     * The whole region is rendered.
+     */
+    public static final RegionChanges FULL = new RegionChanges();
+
+    private final BitSet changed;
+    private final BitSet chunks;
+    private final BitSet scanned;
+    private final BitSet drawn;
+
+    private RegionChanges() {
+        this.changed = null;
+        this.chunks = null;
+        this.scanned = null;
+        this.drawn = null;
+    }
+
+    /**
+     * Create the changes of a region.
+     *
+     * @param changed Indexes of the changed chunks in the region (0-1023)
+     * @param border  Blocks around the changed chunks that are redrawn
+     * @param margin  Blocks around the redrawn area that are scanned but not drawn
+     * @param reach   Blocks a scanned column reads from its neighbors
+     */
+    public RegionChanges(@NotNull BitSet changed, int border, int margin, int reach) {
+        this.changed = changed;
+        this.chunks = new BitSet(1024);
+        this.scanned = new BitSet(512 * 512);
+        this.drawn = new BitSet(512 * 512);
+
+        int scan = border + margin;
+        int spread = (scan + reach + 15) >> 4;
+        for (int index = changed.nextSetBit(0); index >= 0; index = changed.nextSetBit(index + 1)) {
+            int chunkX = index & 0x1F;
+            int chunkZ = index >> 5;
+            fill(this.chunks, 32, chunkX - spread, chunkZ - spread, chunkX + spread + 1, chunkZ + spread + 1);
+            int minX = chunkX << 4;
+            int minZ = chunkZ << 4;
+            fill(this.scanned, 512, minX - scan, minZ - scan, minX + 16 + scan, minZ + 16 + scan);
+            fill(this.drawn, 512, minX - border, minZ - border, minX + 16 + border, minZ + 16 + border);
+        }
+    }
+
+    private static void fill(@NotNull BitSet bits, int size, int minX, int minZ, int maxX, int maxZ) {
+        minX = Math.max(0, minX);
+        maxX = Math.min(size, maxX);
+        for (int z = Math.max(0, minZ); z < Math.min(size, maxZ); z++) {
+            bits.set(z * size + minX, z * size + maxX);
+        }
+    }
+
+    /**
+     * Check if the whole region is rendered.
+     *
+     * @return True if every chunk is rendered
+     */
+    public boolean isFull() {
+        return this.changed == null;
+    }
+
+    /**
+     * Check if nothing in the region changed.
+     *
+     * @return True if there is nothing to render
+     */
+    public boolean isEmpty() {
+        return this.changed != null && this.changed.isEmpty();
+    }
+
+    /**
+     * Get the number of changed chunks.
+     *
+     * @return Changed chunk count
+     */
+    public int size() {
+        return this.changed == null ? 1024 : this.changed.cardinality();
+    }
+
+    /**
+     * Check if a chunk in this region has to be decoded.
+     *
+     * @param index Chunk index in region (0-1023)
+     * @return True if the chunk is needed
+     */
+    public boolean needsChunk(int index) {
+        return this.chunks == null || this.chunks.get(index);
+    }
+
+    /**
+     * Check if a chunk has to be decoded.
+     * <p>
+     * Chunks outside of this region are needed when the closest chunk inside of it is.
+     *
+     * @param regionX Region X coordinate
+     * @param regionZ Region Z coordinate
+     * @param chunkX  Chunk X coordinate
+     * @param chunkZ  Chunk Z coordinate
+     * @return True if the chunk is needed
+     */
+    public boolean needsChunk(int regionX, int regionZ, int chunkX, int chunkZ) {
+        if (this.chunks == null) {
+            return true;
+        }
+        int x = Mathf.clamp(0, 31, chunkX - (regionX << 5));
+        int z = Mathf.clamp(0, 31, chunkZ - (regionZ << 5));
+        return this.chunks.get((z << 5) + x);
+    }
+
+    /**
+     * Check if a column in this region has to be scanned.
+     *
+     * @param blockX Block X coordinate
+     * @param blockZ Block Z coordinate
+     * @return True if the column is scanned
+     */
+    public boolean scansBlock(int blockX, int blockZ) {
+        return this.scanned == null || this.scanned.get(((blockZ & 0x1FF) << 9) + (blockX & 0x1FF));
+    }
+
+    /**
+     * Check if a column in this region has to be drawn.
+     *
+     * @param blockX Block X coordinate
+     * @param blockZ Block Z coordinate
+     * @return True if the column is drawn
+     */
+    public boolean drawsBlock(int blockX, int blockZ) {
+        return this.drawn == null || this.drawn.get(((blockZ & 0x1FF) << 9) + (blockX & 0x1FF));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.util.Mathf;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Surface heights along the four borders of each rendered region.
+ * <p>
+ * Neighboring regions only need these edge columns for their heightmaps, so keeping them
+ * around saves decoding a whole neighbor region just to read one row of it.
+ */
+public class RegionEdgeCache {
+    public static final int WEST = 0;
+    public static final int EAST = 1;
+    public static final int NORTH = 2;
+    public static final int SOUTH = 3;
+
+    private final Path directory;
+    private final LoadingCache<@NotNull Long, @NotNull Edges> cache;
+
+    public RegionEdgeCache(@NotNull World world) {
+        this.directory = world.getTilesDirectory().resolve(".edges");
+        this.cache = Caffeine.newBuilder()
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .maximumSize(256)
+                .build(this::load);
+    }
+
+    /**
+     * Get the edges of a region if they were captured after the given modified time.
+     * <p>
+     * Edges are stored as four runs of 512 heights in {@link #WEST}, {@link #EAST},
+     * {@link #NORTH}, {@link #SOUTH} order, with {@link Chunk#NO_HEIGHT} where there is no data.
+     *
+     * @param regionX  Region X coordinate
+     * @param regionZ  Region Z coordinate
+     * @param modified Last modified time of the region file
+     * @return Edge heights, or null if missing or stale
+     */
+    public int @Nullable [] get(int regionX, int regionZ, long modified) {
+        Edges edges = this.cache.get(Mathf.asLong(regionX, regionZ));
+        return edges == null || edges.modified() < modified ? null : edges.heights();
+    }
+
+    public void set(int regionX, int regionZ, long modified, int @NotNull [] heights) {
+        long pos = Mathf.asLong(regionX, regionZ);
+        Edges edges = new Edges(modified, heights);
+        this.cache.put(pos, edges);
+        FileUtil.createDirs(this.directory);
+        Path file = getFile(regionX, regionZ);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            // never leave a half written file behind
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(tmp.toFile())))) {
+                out.writeLong(edges.modified());
+                for (int height : heights) {
+                    out.writeInt(height);
+                }
+                out.flush();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.warn("Failed to save region edges for %d,%d".formatted(regionX, regionZ), e);
+        }
+    }
+
+    private @Nullable Edges load(long pos) {
+        Path file = getFile(Mathf.longToX(pos), Mathf.longToZ(pos));
+        if (!file.toFile().exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file.toFile())))) {
+            long modified = in.readLong();
+            int[] heights = new int[512 << 2];
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = in.readInt();
+            }
+            return new Edges(modified, heights);
+        } catch (IOException e) {
+            Logger.warn("Failed to read region edges from %s".formatted(file.getFileName()), e);
+            return null;
+        }
+    }
+
+    private @NotNull Path getFile(int regionX, int regionZ) {
+        return this.directory.resolve(regionX + "_" + regionZ + ".bin");
+    }
+
+    private record Edges(long modified, int @NotNull [] heights) {
+    }
+}
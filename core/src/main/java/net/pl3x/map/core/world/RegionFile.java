@@ -0,0 +1,293 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import net.querz.mca.CompressionType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Read-only view of an .mca file.
+ * <p>
+ * The file is mapped into memory once and its location and timestamp tables
+ * are parsed up front, so reading a chunk never touches the file system.
+ * <p>
+ * Close it as soon as the chunks are read. An open mapping keeps the server from
+ * rewriting the file on Windows, and a file truncated while mapped fails reads on Linux.
+ */
+public class RegionFile implements Closeable {
+    private static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SIZE = SECTOR_SIZE * 2;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> clazz = Class.forName("sun.misc.Unsafe");
+            Field field = clazz.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = clazz.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Throwable ignore) {
+            // mappings are left to the garbage collector
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private ByteBuffer buffer;
+    private final int[] locations = new int[1024];
+    private final int[] timestamps = new int[1024];
+
+    private RegionFile(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer;
+        for (int index = 0; index < 1024; index++) {
+            this.locations[index] = buffer.getInt(index << 2);
+            this.timestamps[index] = buffer.getInt(SECTOR_SIZE + (index << 2));
+        }
+    }
+
+    /**
+     * Map a region file into memory.
+     *
+     * @param path Path to .mca file
+     * @return Mapped region file, or null if the file does not exist or has no header
+     * @throws IOException If the file could not be mapped
+     */
+    public static @Nullable RegionFile open(@NotNull Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            // the mapping stays valid after the channel is closed
+            return new RegionFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Read a single chunk straight from a region file, without mapping it.
+     *
+     * @param path  Path to .mca file
+     * @param index Chunk index in region (0-1023)
+     * @return Decompressed chunk data, or null if the file or chunk does not exist
+     * @throws IOException If the chunk could not be read
+     */
+    public static @Nullable InputStream readChunkInputStream(@NotNull Path path, int index) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer location = read(channel, (long) index << 2, 4);
+            if (location == null || (location.getInt(0) & 0xFF) == 0) {
+                return null;
+            }
+            long position = (long) (location.getInt(0) >>> 8) * SECTOR_SIZE;
+            ByteBuffer header = position < HEADER_SIZE ? null : read(channel, position, 4);
+            if (header == null) {
+                throw new IOException("Chunk " + index + " points outside of region file");
+            }
+            int length = header.getInt(0);
+            if (length < 1 || position + 4 + length > channel.size()) {
+                throw new IOException("Chunk " + index + " has invalid length " + length);
+            }
+            ByteBuffer payload = read(channel, position + 4, length);
+            if (payload == null) {
+                throw new IOException("Chunk " + index + " has invalid length " + length);
+            }
+            return decompress(payload);
+        }
+    }
+
+    private static @Nullable ByteBuffer read(@NotNull FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Read just the timestamp table of a region file, without mapping the rest of it.
+     *
+     * @param path Path to .mca file
+     * @return Epoch seconds each chunk was last saved, or null if the file does not exist or has no header
+     * @throws IOException If the file could not be read
+     */
+    public static int @Nullable [] readTimestamps(@NotNull Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SECTOR_SIZE);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, SECTOR_SIZE + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+            int[] timestamps = new int[1024];
+            buffer.flip().asIntBuffer().get(timestamps);
+            return timestamps;
+        }
+    }
+
+    /**
+     * Check if a chunk exists in this region file.
+     *
+     * @param index Chunk index in region (0-1023)
+     * @return True if the chunk has data
+     */
+    public boolean hasChunk(int index) {
+        return (this.locations[index] & 0xFF) != 0;
+    }
+
+    /**
+     * Get the last time a chunk was saved.
+     *
+     * @param index Chunk index in region (0-1023)
+     * @return Epoch seconds the chunk was last saved, or 0 if never
+     */
+    public int getTimestamp(int index) {
+        return this.timestamps[index];
+    }
+
+    /**
+     * Get the raw (still compressed) payload of a chunk.
+     *
+     * @param index Chunk index in region (0-1023)
+     * @return Compressed payload, or null if the chunk has no data
+     * @throws IOException If the location table points outside the file
+     */
+    public @Nullable ByteBuffer getPayload(int index) throws IOException {
+        if (!hasChunk(index)) {
+            return null;
+        }
+        if (this.buffer == null) {
+            throw new IOException("Region file is closed");
+        }
+        int position = (this.locations[index] >>> 8) * SECTOR_SIZE;
+        if (position < HEADER_SIZE || position + 5 > this.buffer.limit()) {
+            throw new IOException("Chunk " + index + " points outside of region file");
+        }
+        int length = this.buffer.getInt(position);
+        if (length < 1 || position + 4 + length > this.buffer.limit()) {
+            throw new IOException("Chunk " + index + " has invalid length " + length);
+        }
+        return this.buffer.slice(position + 4, length);
+    }
+
+    /**
+     * Get a decompressing stream over a chunk's payload.
+     *
+     * @param index Chunk index in region (0-1023)
+     * @return Decompressed chunk data, or null if the chunk has no data
+     * @throws IOException If the payload could not be read
+     */
+    public @Nullable InputStream getChunkInputStream(int index) throws IOException {
+        ByteBuffer payload = getPayload(index);
+        return payload == null ? null : decompress(payload);
+    }
+
+    /**
+     * Unmap the file. Nothing read from it may be used afterwards.
+     */
+    @Override
+    public void close() {
+        ByteBuffer buffer = this.buffer;
+        this.buffer = null;
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (Throwable ignore) {
+        }
+    }
+
+    private static @NotNull InputStream decompress(@NotNull ByteBuffer payload) throws IOException {
+        byte compressionTypeByte = payload.get(0);
+        CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
+        if (compressionType == null) {
+            throw new IOException("Invalid compression type " + compressionTypeByte);
+        }
+        return compressionType.decompress(new ByteBufferInputStream(payload.position(1)));
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int remaining = this.buffer.remaining();
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = Math.min(length, remaining);
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
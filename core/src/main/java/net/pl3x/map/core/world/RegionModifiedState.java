@@ -24,24 +24,42 @@
  */
 package net.pl3x.map.core.world;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.util.Mathf;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class RegionModifiedState {
     private final Map<@NotNull Long, @NotNull Long> regionModifiedStates = new ConcurrentHashMap<>(); // <pos, modified>
     private final File file;
 
+    private final Path chunksDirectory;
+    private final LoadingCache<@NotNull Long, long @NotNull []> chunks;
+
     public RegionModifiedState(@NotNull World world) {
         this.file = world.getTilesDirectory().resolve(".rms").toFile();
 
+        this.chunksDirectory = world.getTilesDirectory().resolve(".chunks");
+        this.chunks = Caffeine.newBuilder()
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .maximumSize(256)
+                .build(this::loadChunks);
+
         if (this.file.exists()) {
             try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(this.file)))) {
                 int size = in.readInt();
@@ -73,4 +91,72 @@ public class RegionModifiedState {
         } catch (Throwable ignore) {
         }
     }
+
+    /**
+     * Get the state of each chunk in a region as it was last rendered.
+     * <p>
+     * Each entry holds the chunk's timestamp from the region file header in the upper 32 bits
+     * and a hash of its compressed payload in the lower 32 bits, or 0 if the chunk had no data.
+     *
+     * @param regionX Region X coordinate
+     * @param regionZ Region Z coordinate
+     * @return Chunk states indexed by chunk index in region, or null if unknown
+     */
+    public long @Nullable [] getChunks(int regionX, int regionZ) {
+        return this.chunks.get(Mathf.asLong(regionX, regionZ));
+    }
+
+    public void setChunks(int regionX, int regionZ, long @NotNull [] states) {
+        this.chunks.put(Mathf.asLong(regionX, regionZ), states);
+        FileUtil.createDirs(this.chunksDirectory);
+        Path file = getChunksFile(regionX, regionZ);
+        Path tmp = FileUtil.tmp(file);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp)))) {
+                for (long state : states) {
+                    out.writeLong(state);
+                }
+                out.flush();
+            }
+            FileUtil.atomicMove(tmp, file);
+        } catch (Throwable t) {
+            Logger.warn("Failed to save chunk states to " + file, t);
+        }
+    }
+
+    /**
+     * Forget the chunk states of a region, so its next render redraws every chunk.
+     *
+     * @param regionX Region X coordinate
+     * @param regionZ Region Z coordinate
+     */
+    public void resetChunks(int regionX, int regionZ) {
+        this.chunks.invalidate(Mathf.asLong(regionX, regionZ));
+        Path file = getChunksFile(regionX, regionZ);
+        try {
+            Files.deleteIfExists(file);
+        } catch (Throwable t) {
+            Logger.warn("Failed to delete chunk states " + file, t);
+        }
+    }
+
+    private long @Nullable [] loadChunks(long pos) {
+        Path file = getChunksFile(Mathf.longToX(pos), Mathf.longToZ(pos));
+        if (!file.toFile().exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file.toFile())))) {
+            long[] states = new long[1024];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = in.readLong();
+            }
+            return states;
+        } catch (Throwable ignore) {
+            return null;
+        }
+    }
+
+    private @NotNull Path getChunksFile(int regionX, int regionZ) {
+        return this.chunksDirectory.resolve(regionX + "_" + regionZ + ".bin");
+    }
 }
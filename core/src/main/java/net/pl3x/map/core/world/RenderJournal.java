@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.Mathf;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Append-only log of a world's render queue, so a restart picks up where the last run stopped.
+ * <p>
+ * Every region is logged when it is queued, when a render thread starts on it and when its tiles are written.
+ * Regions that were queued or started but never finished are queued again on startup, and the
+ * modified time of every finished region is put back into the {@link RegionModifiedState} in case
+ * the server went down before it was saved. The log is rewritten with only the unfinished regions
+ * whenever the region modified state is saved, or once it grew past a configured size.
+ */
+public class RenderJournal {
+    private static final byte QUEUED = 'Q';
+    private static final byte STARTED = 'S';
+    private static final byte DONE = 'D';
+
+    private static final int RECORD_SIZE = 17; // op, region, modified time
+    private static final int DONE_BATCH = 64;
+
+    private final World world;
+    private final Path file;
+    private final Path tmpFile;
+    private final Map<@NotNull Long, @NotNull Byte> regions = new LinkedHashMap<>(); // <pos, op>
+    private final Map<@NotNull Long, @NotNull Long> finished = new LinkedHashMap<>(); // <pos, modified>
+
+    private FileChannel channel;
+    private boolean opened;
+    private int records;
+
+    public RenderJournal(@NotNull World world) {
+        this.world = world;
+        this.file = world.getTilesDirectory().resolve(".journal");
+        this.tmpFile = world.getTilesDirectory().resolve(".journal.tmp");
+    }
+
+    /**
+     * Read back the journal left behind by the last run.
+     *
+     * @return Regions that were queued but never finished rendering
+     */
+    public synchronized @NotNull Collection<@NotNull Point> open() {
+        if (!Config.RENDER_JOURNAL_ENABLED) {
+            return List.of();
+        }
+        replay();
+        this.opened = true;
+        compact();
+
+        List<Point> unfinished = new ArrayList<>();
+        this.regions.keySet().forEach(pos -> unfinished.add(Point.of(Mathf.longToX(pos), Mathf.longToZ(pos))));
+        return unfinished;
+    }
+
+    public synchronized void close() {
+        this.opened = false;
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (IOException ignore) {
+            }
+            this.channel = null;
+        }
+    }
+
+    public synchronized void queued(@NotNull Collection<@NotNull Point> regions) {
+        if (this.channel == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(regions.size() * RECORD_SIZE);
+        for (Point region : regions) {
+            long pos = Mathf.asLong(region);
+            if (this.regions.putIfAbsent(pos, QUEUED) == null) {
+                this.finished.remove(pos);
+                buffer.put(QUEUED).putLong(pos).putLong(0L);
+            }
+        }
+        append(buffer);
+    }
+
+    public synchronized void started(@NotNull Point region) {
+        if (this.channel == null) {
+            return;
+        }
+        long pos = Mathf.asLong(region);
+        this.regions.put(pos, STARTED);
+        this.finished.remove(pos);
+        append(ByteBuffer.allocate(RECORD_SIZE).put(STARTED).putLong(pos).putLong(0L));
+    }
+
+    /**
+     * Log a region as rendered.
+     * <p>
+     * Set the region's modified time in the {@link RegionModifiedState} before calling this.
+     * The region is only logged as done once the world's tile store has written its tiles out,
+     * until then a crash queues it again.
+     *
+     * @param region   Region position
+     * @param modified The region's new modified time
+     */
+    public synchronized void done(@NotNull Point region, long modified) {
+        if (this.channel != null) {
+            long pos = Mathf.asLong(region);
+            this.regions.remove(pos);
+            this.finished.put(pos, modified);
+            if (this.finished.size() >= DONE_BATCH) {
+                commit();
+            }
+        } else {
+            // no journal, but the saved state still has to keep up
+            this.records++;
+        }
+        // only count records compaction would actually get rid of
+        if (this.records + this.finished.size() - this.regions.size() >= Math.max(1024, Config.RENDER_JOURNAL_COMPACT_AFTER)) {
+            compact();
+        }
+    }
+
+    private void commit() {
+        this.world.getTileStore().flush();
+        ByteBuffer buffer = ByteBuffer.allocate(this.finished.size() * RECORD_SIZE);
+        this.finished.forEach((pos, modified) -> buffer.put(DONE).putLong(pos).putLong(modified));
+        this.finished.clear();
+        append(buffer);
+    }
+
+    /**
+     * Write out the world's waiting tiles, save the {@link RegionModifiedState} and {@link TileHashIndex},
+     * and rewrite the journal with only the unfinished regions.
+     * <p>
+     * All of it happens under the journal's lock, so no finished region can slip between them.
+     */
+    public synchronized void compact() {
+        // the saved state must never claim more than what is on disk
+        this.world.getTileStore().flush();
+        this.finished.clear();
+        this.world.getRegionModifiedState().save();
+        this.world.getTileHashIndex().save();
+        if (!this.opened) {
+            this.records = 0;
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(this.regions.size() * RECORD_SIZE);
+        this.regions.forEach((pos, op) -> buffer.put(op).putLong(pos).putLong(0L));
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(this.tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            Logger.warn("Failed to compact render journal for world %s".formatted(this.world.getName()), e);
+            return;
+        }
+        closeChannel();
+        try {
+            Files.move(this.tmpFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.records = this.regions.size();
+        } catch (IOException e) {
+            Logger.warn("Failed to open render journal for world %s".formatted(this.world.getName()), e);
+        }
+    }
+
+    private void replay() {
+        this.regions.clear();
+        if (!Files.exists(this.file)) {
+            return;
+        }
+        RegionModifiedState state = this.world.getRegionModifiedState();
+        try {
+            // a torn record at the end is whatever was being written when the server went down
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.file));
+            while (buffer.remaining() >= RECORD_SIZE) {
+                byte op = buffer.get();
+                long pos = buffer.getLong();
+                long modified = buffer.getLong();
+                switch (op) {
+                    case QUEUED -> this.regions.putIfAbsent(pos, QUEUED);
+                    case STARTED -> this.regions.put(pos, STARTED);
+                    case DONE -> {
+                        this.regions.remove(pos);
+                        if (modified > state.get(pos)) {
+                            state.set(pos, modified);
+                        }
+                    }
+                    default -> {
+                        Logger.warn("Render journal for world %s is corrupt, ignoring the rest of it".formatted(this.world.getName()));
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn("Failed to read render journal for world %s".formatted(this.world.getName()), e);
+        }
+    }
+
+    private void append(@NotNull ByteBuffer buffer) {
+        buffer.flip();
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        try {
+            // not forced to disk, the os still has it if only the server crashes
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+            this.records += buffer.limit() / RECORD_SIZE;
+        } catch (IOException e) {
+            Logger.warn("Failed to write render journal for world %s".formatted(this.world.getName()), e);
+        }
+    }
+}
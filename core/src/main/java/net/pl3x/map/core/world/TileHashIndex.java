@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.util.LongLongMap;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Content hashes of the tiles of a world.
+ * <p>
+ * Two hashes are kept per tile: the hash of the pixels that were last rendered for it,
+ * and the hash of the pixels that were last written to it. Re-renders that come out the same
+ * can then skip decoding and writing, and the web server can hand out ETags that only change
+ * when the tile really did.
+ */
+public class TileHashIndex {
+    private final LongLongMap hashes = new LongLongMap(); // <path hash, content hash>
+    private final Path file;
+
+    public TileHashIndex(@NotNull World world) {
+        this.file = world.getTilesDirectory().resolve(".hashes");
+
+        if (Files.exists(this.file)) {
+            try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(this.file))))) {
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    this.hashes.put(in.readLong(), in.readLong());
+                }
+            } catch (IOException e) {
+                Logger.warn("Failed to read tile hashes for world %s".formatted(world.getName()), e);
+            }
+        }
+    }
+
+    /**
+     * Get the hash of the pixels last rendered for a tile.
+     *
+     * @param tile Tile name
+     * @return Rendered pixel hash, or 0 if unknown
+     */
+    public long getRendered(@NotNull String tile) {
+        return get(key(tile) ^ 0x5DEECE66DL);
+    }
+
+    public void setRendered(@NotNull String tile, long hash) {
+        put(key(tile) ^ 0x5DEECE66DL, hash);
+    }
+
+    /**
+     * Get the hash of the pixels last written to a tile.
+     *
+     * @param tile Tile name
+     * @return Written pixel hash, or 0 if unknown
+     */
+    public long getWritten(@NotNull String tile) {
+        return get(key(tile));
+    }
+
+    public void setWritten(@NotNull String tile, long hash) {
+        put(key(tile), hash);
+    }
+
+    /**
+     * Forget both hashes of a tile, so it is drawn and written again on its next render.
+     *
+     * @param tile Tile name
+     */
+    public void forget(@NotNull String tile) {
+        long key = key(tile);
+        synchronized (this.hashes) {
+            this.hashes.put(key, 0L);
+            this.hashes.put(key ^ 0x5DEECE66DL, 0L);
+        }
+    }
+
+    private long get(long key) {
+        synchronized (this.hashes) {
+            return this.hashes.get(key, 0L);
+        }
+    }
+
+    private void put(long key, long hash) {
+        synchronized (this.hashes) {
+            this.hashes.put(key, hash);
+        }
+    }
+
+    private long key(@NotNull String tile) {
+        return hash(tile);
+    }
+
+    /**
+     * Write the index to disk, replacing the old one in a single step.
+     */
+    public void save() {
+        ByteBuffer buffer;
+        synchronized (this.hashes) {
+            buffer = ByteBuffer.allocate(this.hashes.size() * 16);
+            this.hashes.forEach((key, hash) -> buffer.putLong(key).putLong(hash));
+        }
+        Path tmp = this.file.resolveSibling(".hashes.tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(buffer.position() / 16);
+                out.write(buffer.array(), 0, buffer.position());
+            }
+            Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.warn("Failed to save tile hashes to %s".formatted(this.file), e);
+        }
+    }
+
+    public static long hash(@NotNull String str) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < str.length(); i++) {
+            hash = (hash ^ str.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Hash a block of pixels. Never returns 0, which is used for unknown hashes.
+     *
+     * @param pixels Pixels to hash
+     * @return 64 bit content hash
+     */
+    public static long hash(int @NotNull [] pixels) {
+        long hash = pixels.length;
+        for (int pixel : pixels) {
+            hash = (hash + pixel) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.pl3x.map.core.markers.area.Area;
+import net.pl3x.map.core.markers.area.Border;
+import net.pl3x.map.core.util.Mathf;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The visible areas of a world, worked out per region.
+ * <p>
+ * Regions and chunks are either fully inside, fully outside or partially inside the visible
+ * areas. Only partially inside chunks keep a bit for each of their blocks, so the render loop
+ * can skip the visibility checks for everything else.
+ */
+public class VisibilityMask {
+    public static final byte OUTSIDE = 0;
+    public static final byte INSIDE = 1;
+    public static final byte PARTIAL = 2;
+
+    private static final RegionMask ALL_OUTSIDE = new RegionMask(OUTSIDE, null, null);
+    private static final RegionMask ALL_INSIDE = new RegionMask(INSIDE, null, null);
+
+    private final World world;
+    private final Border border;
+    private final LoadingCache<@NotNull Long, @NotNull RegionMask> regions;
+
+    // what the cached masks were worked out from
+    private List<Area> areas;
+    private boolean clip;
+    private double minX, minZ, maxX, maxZ;
+
+    public VisibilityMask(@NotNull World world) {
+        this.world = world;
+        this.border = new Border(world);
+        this.regions = Caffeine.newBuilder()
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .maximumSize(256)
+                .build(this::compile);
+    }
+
+    /**
+     * Get the visibility of a region and its chunks.
+     *
+     * @param regionX Region X coordinate
+     * @param regionZ Region Z coordinate
+     * @return Region mask
+     */
+    public @NotNull RegionMask getRegion(int regionX, int regionZ) {
+        checkChanged();
+        return this.regions.get(Mathf.asLong(regionX, regionZ));
+    }
+
+    public boolean visibleBlock(int blockX, int blockZ) {
+        if (this.world.getConfig().RENDER_CLIP_TO_BORDER && !this.border.containsBlock(blockX, blockZ)) {
+            return false;
+        }
+        List<Area> areas = this.world.getConfig().VISIBLE_AREAS;
+        for (Area area : areas) {
+            if (area.containsBlock(blockX, blockZ)) {
+                return true;
+            }
+        }
+        return areas.isEmpty();
+    }
+
+    public boolean visibleChunk(int chunkX, int chunkZ) {
+        if (this.world.getConfig().RENDER_CLIP_TO_BORDER && !this.border.containsChunk(chunkX, chunkZ)) {
+            return false;
+        }
+        List<Area> areas = this.world.getConfig().VISIBLE_AREAS;
+        for (Area area : areas) {
+            if (area.containsChunk(chunkX, chunkZ)) {
+                return true;
+            }
+        }
+        return areas.isEmpty();
+    }
+
+    public boolean visibleRegion(int regionX, int regionZ) {
+        if (this.world.getConfig().RENDER_CLIP_TO_BORDER && !this.border.containsRegion(regionX, regionZ)) {
+            return false;
+        }
+        List<Area> areas = this.world.getConfig().VISIBLE_AREAS;
+        for (Area area : areas) {
+            if (area.containsRegion(regionX, regionZ)) {
+                return true;
+            }
+        }
+        return areas.isEmpty();
+    }
+
+    private boolean visibleBlocks(int minX, int minZ, int maxX, int maxZ) {
+        if (this.world.getConfig().RENDER_CLIP_TO_BORDER && !this.border.containsBlocks(minX, minZ, maxX, maxZ)) {
+            return false;
+        }
+        List<Area> areas = this.world.getConfig().VISIBLE_AREAS;
+        for (Area area : areas) {
+            if (area.containsBlocks(minX, minZ, maxX, maxZ)) {
+                return true;
+            }
+        }
+        return areas.isEmpty();
+    }
+
+    private synchronized void checkChanged() {
+        List<Area> areas = this.world.getConfig().VISIBLE_AREAS;
+        boolean clip = this.world.getConfig().RENDER_CLIP_TO_BORDER;
+        double minX = this.world.getBorderMinX();
+        double minZ = this.world.getBorderMinZ();
+        double maxX = this.world.getBorderMaxX();
+        double maxZ = this.world.getBorderMaxZ();
+        // the border can move at any time, the config can be reloaded
+        if (areas != this.areas || clip != this.clip
+                || minX != this.minX || minZ != this.minZ || maxX != this.maxX || maxZ != this.maxZ) {
+            this.regions.invalidateAll();
+            this.areas = areas;
+            this.clip = clip;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+        }
+    }
+
+    private @NotNull RegionMask compile(long pos) {
+        int regionX = Mathf.longToX(pos);
+        int regionZ = Mathf.longToZ(pos);
+        if (!visibleRegion(regionX, regionZ)) {
+            return ALL_OUTSIDE;
+        }
+        int bX = regionX << 9;
+        int bZ = regionZ << 9;
+        if (visibleBlocks(bX, bZ, bX + 511, bZ + 511)) {
+            return ALL_INSIDE;
+        }
+
+        byte[] chunks = new byte[1024];
+        long[][] blocks = new long[1024][];
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                int chunkX = (regionX << 5) + x;
+                int chunkZ = (regionZ << 5) + z;
+                int index = (z << 5) | x;
+                if (!visibleChunk(chunkX, chunkZ)) {
+                    chunks[index] = OUTSIDE;
+                    continue;
+                }
+                int cX = chunkX << 4;
+                int cZ = chunkZ << 4;
+                if (visibleBlocks(cX, cZ, cX + 15, cZ + 15)) {
+                    chunks[index] = INSIDE;
+                    continue;
+                }
+                long[] bits = new long[4];
+                for (int i = 0; i < 256; i++) {
+                    if (visibleBlock(cX + (i & 15), cZ + (i >> 4))) {
+                        bits[i >> 6] |= 1L << (i & 63);
+                    }
+                }
+                chunks[index] = PARTIAL;
+                blocks[index] = bits;
+            }
+        }
+        return new RegionMask(PARTIAL, chunks, blocks);
+    }
+
+    public static class RegionMask {
+        private final byte state;
+        private final byte[] chunks;
+        private final long[][] blocks;
+
+        private RegionMask(byte state, byte[] chunks, long[][] blocks) {
+            this.state = state;
+            this.chunks = chunks;
+            this.blocks = blocks;
+        }
+
+        /**
+         * Get the visibility of the whole region.
+         *
+         * @return {@link #OUTSIDE}, {@link #INSIDE} or {@link #PARTIAL}
+         */
+        public byte getState() {
+            return this.state;
+        }
+
+        /**
+         * Get the visibility of a chunk in this region.
+         *
+         * @param chunkX Chunk X coordinate
+         * @param chunkZ Chunk Z coordinate
+         * @return {@link #OUTSIDE}, {@link #INSIDE} or {@link #PARTIAL}
+         */
+        public byte getChunk(int chunkX, int chunkZ) {
+            return this.chunks == null ? this.state : this.chunks[((chunkZ & 31) << 5) | (chunkX & 31)];
+        }
+
+        /**
+         * Check if a block in this region is visible.
+         *
+         * @param blockX Block X coordinate
+         * @param blockZ Block Z coordinate
+         * @return True if visible
+         */
+        public boolean containsBlock(int blockX, int blockZ) {
+            if (this.chunks == null) {
+                return this.state == INSIDE;
+            }
+            int index = ((blockZ >> 4 & 31) << 5) | (blockX >> 4 & 31);
+            byte chunk = this.chunks[index];
+            if (chunk != PARTIAL) {
+                return chunk == INSIDE;
+            }
+            int i = ((blockZ & 15) << 4) | (blockX & 15);
+            return (this.blocks[index][i >> 6] >>> (i & 63) & 1L) != 0;
+        }
+    }
+}
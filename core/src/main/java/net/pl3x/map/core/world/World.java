@@ -46,6 +46,8 @@ import net.pl3x.map.core.configuration.SpawnLayerConfig;
 import net.pl3x.map.core.configuration.WorldBorderLayerConfig;
 import net.pl3x.map.core.configuration.WorldConfig;
 import net.pl3x.map.core.image.IconImage;
+import net.pl3x.map.core.image.TilePyramid;
+import net.pl3x.map.core.image.store.TileStore;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.markers.area.Area;
@@ -58,6 +60,9 @@ import net.pl3x.map.core.player.Player;
 import net.pl3x.map.core.registry.BiomeRegistry;
 import net.pl3x.map.core.registry.Registry;
 import net.pl3x.map.core.renderer.Renderer;
+import net.pl3x.map.core.renderer.task.DirtyChunkTracker;
+import net.pl3x.map.core.renderer.task.RegionDemand;
+import net.pl3x.map.core.renderer.task.RegionFileWatcher;
 import net.pl3x.map.core.renderer.task.UpdateMarkerData;
 import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.util.Mathf;
@@ -85,7 +90,15 @@ public abstract class World extends Keyed {
 
     private final LoadingCache<@NotNull Long, @NotNull Region> regionCache;
     private final RegionModifiedState regionModifiedState;
-    //private final RegionFileWatcher regionFileWatcher;
+    private final RenderJournal renderJournal;
+    private final RegionEdgeCache regionEdgeCache;
+    private final TileStore tileStore;
+    private final TilePyramid tilePyramid;
+    private final TileHashIndex tileHashIndex;
+    private final VisibilityMask visibilityMask;
+    private final RegionDemand regionDemand;
+    private final DirtyChunkTracker dirtyChunkTracker;
+    private final RegionFileWatcher regionFileWatcher;
     private final UpdateMarkerData markerTask;
     private final Map<@NotNull String, Renderer.@NotNull Builder> renderers = new LinkedHashMap<>();
 
@@ -120,7 +133,15 @@ public abstract class World extends Keyed {
                 .build(this::loadRegion);
 
         this.regionModifiedState = new RegionModifiedState(this);
-        //this.regionFileWatcher = new RegionFileWatcher(this);
+        this.renderJournal = new RenderJournal(this);
+        this.regionEdgeCache = new RegionEdgeCache(this);
+        this.tileStore = TileStore.create(this);
+        this.tilePyramid = new TilePyramid(this);
+        this.tileHashIndex = new TileHashIndex(this);
+        this.visibilityMask = new VisibilityMask(this);
+        this.regionDemand = new RegionDemand(this);
+        this.dirtyChunkTracker = new DirtyChunkTracker(this);
+        this.regionFileWatcher = new RegionFileWatcher(this);
         this.markerTask = new UpdateMarkerData(this);
     }
 
@@ -131,7 +152,14 @@ public abstract class World extends Keyed {
 
         getBiomeRegistry().init(this);
 
-        //this.regionFileWatcher.start();
+        // finish what the last run did not, before the timestamps below decide what changed
+        Collection<Point> unfinished = this.renderJournal.open();
+        if (!unfinished.isEmpty()) {
+            Logger.info("Resuming render of " + unfinished.size() + " regions in " + getName());
+            Pl3xMap.api().getRegionProcessor().addRegions(this, unfinished);
+        }
+
+        this.regionFileWatcher.start();
 
         getConfig().RENDER_RENDERERS.forEach((id, icon) -> {
             Renderer.Builder renderer = Pl3xMap.api().getRendererRegistry().get(id);
@@ -169,6 +197,9 @@ public abstract class World extends Keyed {
         Logger.debug("Starting marker task");
         Pl3xMap.api().getScheduler().addTask(1, true, this.markerTask);
 
+        Logger.debug("Starting dirty chunk task");
+        Pl3xMap.api().getScheduler().addTask(this.dirtyChunkTracker);
+
         // load up custom markers
         Logger.debug("Loading custom markers for " + getName());
         for (Path file : getCustomMarkerFiles()) {
@@ -178,7 +209,9 @@ public abstract class World extends Keyed {
 
     public void cleanup() {
         this.regionCache.invalidateAll();
-        getRegionModifiedState().save();
+        // saves the region modified state and tile hashes along with it
+        getRenderJournal().compact();
+        getTileStore().close();
     }
 
     public @NotNull Path getCustomMarkersDirectory() {
@@ -205,9 +238,65 @@ public abstract class World extends Keyed {
         return this.regionModifiedState;
     }
 
-    //public @NotNull RegionFileWatcher getRegionFileWatcher() {
-    //    return this.regionFileWatcher;
-    //}
+    public @NotNull RenderJournal getRenderJournal() {
+        return this.renderJournal;
+    }
+
+    public @NotNull RegionEdgeCache getRegionEdgeCache() {
+        return this.regionEdgeCache;
+    }
+
+    public @NotNull TileStore getTileStore() {
+        return this.tileStore;
+    }
+
+    public @NotNull TilePyramid getTilePyramid() {
+        return this.tilePyramid;
+    }
+
+    public @NotNull TileHashIndex getTileHashIndex() {
+        return this.tileHashIndex;
+    }
+
+    public @NotNull VisibilityMask getVisibilityMask() {
+        return this.visibilityMask;
+    }
+
+    public @NotNull RegionDemand getRegionDemand() {
+        return this.regionDemand;
+    }
+
+    public @NotNull DirtyChunkTracker getDirtyChunkTracker() {
+        return this.dirtyChunkTracker;
+    }
+
+    /**
+     * Tell the map a chunk was changed on the server.
+     * <p>
+     * The chunk is rendered again once the server saved it to its region file.
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     */
+    public void markChunkDirty(int chunkX, int chunkZ) {
+        if (isEnabled()) {
+            this.dirtyChunkTracker.mark(chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Tell the map a block was changed on the server.
+     *
+     * @param blockX Block X coordinate
+     * @param blockZ Block Z coordinate
+     */
+    public void markBlockDirty(int blockX, int blockZ) {
+        markChunkDirty(blockX >> 4, blockZ >> 4);
+    }
+
+    public @NotNull RegionFileWatcher getRegionFileWatcher() {
+        return this.regionFileWatcher;
+    }
 
     public @NotNull UpdateMarkerData getMarkerTask() {
         return this.markerTask;
@@ -286,30 +375,15 @@ public abstract class World extends Keyed {
     public abstract @NotNull Collection<@NotNull Player> getPlayers();
 
     public boolean visibleBlock(int blockX, int blockZ) {
-        for (Area area : getConfig().VISIBLE_AREAS) {
-            if (area.containsBlock(blockX, blockZ)) {
-                return true;
-            }
-        }
-        return getConfig().VISIBLE_AREAS.isEmpty();
+        return getVisibilityMask().visibleBlock(blockX, blockZ);
     }
 
     public boolean visibleChunk(int chunkX, int chunkZ) {
-        for (Area area : getConfig().VISIBLE_AREAS) {
-            if (area.containsChunk(chunkX, chunkZ)) {
-                return true;
-            }
-        }
-        return getConfig().VISIBLE_AREAS.isEmpty();
+        return getVisibilityMask().visibleChunk(chunkX, chunkZ);
     }
 
     public boolean visibleRegion(int regionX, int regionZ) {
-        for (Area area : getConfig().VISIBLE_AREAS) {
-            if (area.containsRegion(regionX, regionZ)) {
-                return true;
-            }
-        }
-        return getConfig().VISIBLE_AREAS.isEmpty();
+        return getVisibilityMask().visibleRegion(regionX, regionZ);
     }
 
     public @NotNull Chunk getChunk(@Nullable Region region, int chunkX, int chunkZ) {
@@ -367,7 +441,7 @@ public abstract class World extends Keyed {
         return new Region(this, x, z, getMCAFile(x, z));
     }
 
-    private @NotNull Path getMCAFile(int regionX, int regionZ) {
+    public @NotNull Path getMCAFile(int regionX, int regionZ) {
         return getRegionDirectory().resolve("r." + regionX + "." + regionZ + ".mca");
     }
 
@@ -31,6 +31,7 @@ import java.util.Set;
 import java.util.UUID;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
@@ -77,6 +78,7 @@ public class Pl3xMapFabricServer extends Pl3xMap implements DedicatedServerModIn
 
     private boolean firstTick = true;
     private int tick;
+    private long tickStart;
 
     private FabricNetwork network;
 
@@ -92,7 +94,10 @@ public class Pl3xMapFabricServer extends Pl3xMap implements DedicatedServerModIn
             throw new RuntimeException(e);
         }
 
+        ServerTickEvents.START_SERVER_TICK.register(server -> this.tickStart = System.nanoTime());
+
         ServerTickEvents.END_SERVER_TICK.register(server -> {
+            getRegionProcessor().getGovernor().recordTick(System.nanoTime() - this.tickStart);
             if (this.firstTick) {
                 Pl3xMap.api().getEventRegistry().callEvent(new ServerLoadedEvent());
                 this.firstTick = false;
@@ -129,6 +134,14 @@ public class Pl3xMapFabricServer extends Pl3xMap implements DedicatedServerModIn
             Pl3xMap.api().getWorldRegistry().unregister(name);
         });
 
+        ServerChunkEvents.CHUNK_UNLOAD.register((level, chunk) -> {
+            // unloading chunks get saved, render any changes they had as soon as they land
+            World world = getWorldRegistry().get(level.dimension().location().toString());
+            if (world != null) {
+                world.markChunkDirty(chunk.getPos().x, chunk.getPos().z);
+            }
+        });
+
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
             this.server = server;
             this.adventure = FabricServerAudiences.of(this.server);
@@ -83,6 +83,7 @@ public class Pl3xMapForge extends Pl3xMap {
     private ForgeServerAudiences adventure;
 
     private int tick;
+    private long tickStart;
 
     private final ForgeNetwork network;
 
@@ -111,7 +112,15 @@ public class Pl3xMapForge extends Pl3xMap {
 
     @SubscribeEvent
     public void onServerTick(TickEvent.@NotNull ServerTickEvent event) {
-        if (event.phase == TickEvent.Phase.END && this.tick++ >= 20) {
+        if (event.phase == TickEvent.Phase.START) {
+            this.tickStart = System.nanoTime();
+            return;
+        }
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+        getRegionProcessor().getGovernor().recordTick(System.nanoTime() - this.tickStart);
+        if (this.tick++ >= 20) {
             this.tick = 0;
             getScheduler().tick();
         }